@@ -20,300 +20,318 @@
 
 package ss.beadmaze;
 
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.IOException;
 import java.io.InputStream;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
-import java.util.Stack;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
+import ss.beadmaze.Maze.Direction;
 
 public class AutoMazeBuilder {
-	private Vertex beadStart = null;
-	private Vertex beadEnd = null;
+	private static final Direction mDirections[] = {Direction.EAST, Direction.WEST, Direction.NORTH, Direction.SOUTH};
 	private int mHeight = 0;
 	private int mWidth = 0;
 	private int mPathWidth = 0;
 	private int mXCount = 0;
 	private int mYCount = 0;
-	private int mLevelStartCount = 0;
-	private int mLevelDeltaCount = 0;
-	private final int mVisitedMax = 1;
-	private Random mRandGen = null;
-	private VertexContainer junctions[] = null;
-	
-	private class VertexContainer {
-		Vertex vertex = null;
-		List<Integer> edges = null;
-		int mVisited = 0;
-		int distance = 0x0ffffff;
-		public VertexContainer(Vertex ver) {
-			vertex = ver;
-			edges = new LinkedList<Integer>();
-		}
-	}
+	private long mSeed = 0;
+	private boolean mSeedFixed = false;
+	// Explicit settings which take precedence over the level configuration
+	private MazeGenerator mGeneratorOverride = null;
+	private Boolean mDiameterOverride = null;
+	private boolean mCandidatesOverride = false;
+	// Settings of the current build
+	private MazeGenerator mGenerator = null;
+	// Configuration mGenerator was created from, null if set directly
+	private String mGeneratorName = null;
+	private int mGeneratorThreads = 1;
+	private int mGeneratorTile = 0;
+	private boolean mDiameterEndpoints = false;
+	private int mCandidateCount = 1;
+	private int mCandidateThreads = 1;
+	private DifficultyProfile mProfile = null;
 	
 	public AutoMazeBuilder(int w, int h, int p) {
 		mWidth = w;
 		mHeight = h;
 		mPathWidth = p;
-		mRandGen = new Random();
+		mSeed = new Random().nextLong();
 	}
 	
-	public Maze build(String xmlIn, int level) {
-		FileInputStream f = null;
-		try {
-			f = new FileInputStream(xmlIn);
-		} catch (FileNotFoundException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-			return null;
+	/*
+	 * The maze is fully determined by the level configuration, the level,
+	 * the dimensions passed to the constructor and this seed. Unless set a
+	 * random seed is picked; either way it is recorded in the built Maze.
+	 * An explicitly set seed rebuilds exactly the maze recorded with it, so
+	 * no candidate selection takes place. It also wins over a seed fixed 
+	 * for the level in the configuration.
+	 */
+	public void setSeed(long seed) {
+		mSeed = seed;
+		mSeedFixed = true;
+	}
+	
+	public long getSeed() {
+		return mSeed;
+	}
+	
+	/*
+	 * Map a generator name as used in the level configuration to an
+	 * implementation. Returns null for unknown names.
+	 */
+	public static MazeGenerator createGenerator(String name) {
+		if (name.equalsIgnoreCase("backtracker")) {
+			return new BacktrackerGenerator();
+		}
+		else if (name.equalsIgnoreCase("kruskal")) {
+			return new KruskalGenerator();
+		}
+		else if (name.equalsIgnoreCase("prim")) {
+			return new PrimGenerator();
+		}
+		else if (name.equalsIgnoreCase("wilson")) {
+			return new WilsonGenerator();
+		}
+		else if (name.equalsIgnoreCase("sidewinder")) {
+			return new SidewinderGenerator();
+		}
+		else if (name.equalsIgnoreCase("binarytree")) {
+			return new BinaryTreeGenerator();
 		}
-		return build(f, level);
+		return null;
+	}
+	
+	/*
+	 * Override the generator selected by the level configuration
+	 */
+	public void setGenerator(MazeGenerator generator) {
+		mGeneratorOverride = generator;
+	}
+	
+	/*
+	 * Generate count candidates per level on up to threads threads and keep 
+	 * the one closest to profile, overriding <difficulty> of the level 
+	 * configuration. A generator set with setGenerator() is shared by the candidates, which
+	 * are then generated one after the other.
+	 */
+	public void setCandidates(int count, int threads, DifficultyProfile profile) {
+		mCandidatesOverride = true;
+		mCandidateCount = Math.max(count, 1);
+		mCandidateThreads = Math.max(threads, 1);
+		mProfile = profile;
+	}
+	
+	/*
+	 * When set the start and end are placed at the two ends of the longest
+	 * path in the maze instead of starting at the top left corner and ending
+	 * at the vertex farthest from it. Overrides <endpoints> of the level
+	 * configuration.
+	 */
+	public void setDiameterEndpoints(boolean diameter) {
+		mDiameterOverride = diameter;
+	}
+	
+	/*
+	 * Parses the level configuration on every call; when building more than
+	 * one level parse it once with LevelConfig.parse() instead
+	 */
+	public Maze build(String xmlIn, int level) {
+		LevelConfig config = LevelConfig.parse(xmlIn);
+		return (config == null) ? null : build(config, level);
 	}
 	
 	public Maze build(InputStream stream, int level) {
-		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-		DocumentBuilder builder = null;
-		Document doc = null;
-		try {
-			builder = factory.newDocumentBuilder();
-			doc = builder.parse(stream);
-		} catch (ParserConfigurationException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+		LevelConfig config = LevelConfig.parse(stream);
+		return (config == null) ? null : build(config, level);
+	}
+	
+	public Maze build(LevelConfig config, int level) {
+		if (!createVertices(config, level)) {
 			return null;
 		}
-		catch (SAXException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-			return null;
-		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-			return null;
+		
+		if (mGeneratorOverride != null) {
+			mGenerator = mGeneratorOverride;
+			mGeneratorName = null;
 		}
-		if (!traverseXML(doc, level)) {
-			return null;
+		else {
+			mGeneratorName = config.getGeneratorName(level);
+			mGeneratorThreads = config.getGeneratorThreads(level);
+			mGeneratorTile = config.getGeneratorTile(level);
+			mGenerator = createConfiguredGenerator();
+			if (mGenerator == null) {
+				return null;
+			}
 		}
-		
-		if (!createVertices(level)) {
-			return null;
+		mDiameterEndpoints = (mDiameterOverride != null) ? mDiameterOverride : config.getDiameterEndpoints();
+		if (!mCandidatesOverride) {
+			mCandidateCount = config.getCandidateCount();
+			mCandidateThreads = config.getCandidateThreads();
+			mProfile = config.getProfile();
 		}
 		
-		generateRandomLinks();
-		
-		Vertex arr[] = new Vertex[junctions.length];
-		for (int i=0; i<arr.length; i++) {
-			arr[i] = junctions[i].vertex;
+		long seed = mSeed;
+		boolean seedFixed = mSeedFixed;
+		if (!seedFixed && (config.getSeed(level) != null)) {
+			seed = config.getSeed(level);
+			seedFixed = true;
 		}
-		
-		Edge edge = new Edge(arr);
-		for (int i=0; i<arr.length; i++) {
-			for (Iterator<Integer> j = junctions[i].edges.iterator(); j.hasNext();) { 
-				Vertex ver = junctions[j.next()].vertex;
-				edge.addLinks(junctions[i].vertex, ver);
-			}	
+		if (seedFixed || (mCandidateCount < 2) || (mProfile == null)) {
+			return generateMaze(mGenerator, seed, level);
 		}
-		Bead bead = new Bead(edge, beadStart, 10);
-		return new Maze(bead, edge, beadEnd, mHeight, mWidth, mPathWidth / 2); 
-	}
-
-	private boolean traverseXML(Node node, int level) {
-		boolean result = true;
-	    switch (node.getNodeType()) {
-	    case Node.DOCUMENT_NODE:
-	    case Node.TEXT_NODE:
-        case Node.COMMENT_NODE:
-	    	break;
-        case Node.ELEMENT_NODE:
-            result = processElement((Element)node, level);
-            break;
-        case Node.ATTRIBUTE_NODE:
-        case Node.CDATA_SECTION_NODE:
-        case Node.DOCUMENT_FRAGMENT_NODE:
-        case Node.DOCUMENT_TYPE_NODE:
-        case Node.ENTITY_NODE:
-        case Node.ENTITY_REFERENCE_NODE:
-        case Node.NOTATION_NODE:
-        case Node.PROCESSING_INSTRUCTION_NODE:
-        default:
-            assert (false) : node.toString();
-            result = false;
-        	break;            
-        }
-        if (!result) {
-        	return false;
-        }
-        
-        NodeList clist = node.getChildNodes();
-        for (int i=0; i<clist.getLength(); i++)
-        {
-			result = result && traverseXML(clist.item(i), level);
-        }
-		return result;
+		return selectCandidate(seed, level);
 	}
 	
-    private boolean processElement(Element n, int level) {
-    	boolean result = true;
-    	if (n.getNodeName().equalsIgnoreCase("levelstart")) {
-    		mLevelStartCount = decodeInteger(n, "count");
-    	}
-    	else if (n.getNodeName().equalsIgnoreCase("leveldelta")) {
-    		mLevelDeltaCount = decodeInteger(n, "count");
-    	}
-    	return result;
-    }
+	/*
+	 * Candidate seeds are drawn from the builder's seed and every candidate
+	 * records its own, so the selected maze can be rebuilt with setSeed().
+	 * The pick does not depend on scheduling; ties go to the first one.
+	 */
+	private Maze selectCandidate(long seed, final int level) {
+		Random rand = new Random(seed);
+		final long seeds[] = new long[mCandidateCount];
+		for (int i = 0; i < seeds.length; i++) {
+			seeds[i] = rand.nextLong();
+		}
+		Maze candidates[] = new Maze[seeds.length];
+		double distance[] = new double[seeds.length];
+		if ((mGeneratorName == null) || (mCandidateThreads < 2)) {
+			for (int i = 0; i < seeds.length; i++) {
+				candidates[i] = generateMaze(mGenerator, seeds[i], level);
+				distance[i] = mProfile.distance(new MazeMetrics(candidates[i]));
+			}
+		}
+		else {
+			ExecutorService executor = Executors.newFixedThreadPool(Math.min(mCandidateThreads, seeds.length));
+			List<Future<Maze>> results = new ArrayList<Future<Maze>>(seeds.length);
+			final DifficultyProfile profile = mProfile;
+			final double scores[] = distance;
+			for (int i = 0; i < seeds.length; i++) {
+				final int index = i;
+				// Generators keep state while generating, give each candidate its own
+				final MazeGenerator generator = createConfiguredGenerator();
+				results.add(executor.submit(new Callable<Maze>() {
+					public Maze call() {
+						Maze maze = generateMaze(generator, seeds[index], level);
+						scores[index] = profile.distance(new MazeMetrics(maze));
+						return maze;
+					}
+				}));
+			}
+			try {
+				for (int i = 0; i < seeds.length; i++) {
+					candidates[i] = results.get(i).get();
+				}
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+				Thread.currentThread().interrupt();
+				return null;
+			} catch (ExecutionException e) {
+				e.printStackTrace();
+				return null;
+			} finally {
+				executor.shutdownNow();
+			}
+		}
+		int best = 0;
+		for (int i = 1; i < candidates.length; i++) {
+			if (distance[i] < distance[best]) {
+				best = i;
+			}
+		}
+		return candidates[best];
+	}
 
-    private Integer decodeInteger(Element element, String name) {
-    	String idStr = element.getAttribute(name);
-    	if ((idStr == null) || (idStr.length() == 0)) {
-    		return null;
+    private MazeGenerator createConfiguredGenerator() {
+    	if (mGeneratorName == null) {
+    		return mGenerator;
     	}
-    	idStr.trim();
-    	if ((idStr.charAt(0) == '"') && (idStr.charAt(idStr.length() - 1) == '"')) {
-    		idStr = idStr.substring(1, idStr.length() -2);
+    	if (mGeneratorThreads > 1) {
+    		if (createGenerator(mGeneratorName) == null) {
+    			return null;
+    		}
+    		return new TiledMazeGenerator(mGeneratorName, mGeneratorTile, mGeneratorThreads);
     	}
-    	return Integer.parseInt(idStr);	
+    	return createGenerator(mGeneratorName);
     }
     
-    private boolean createVertices(int level) {
+    private boolean createVertices(LevelConfig config, int level) {
+    	int cellCount = config.getCellCount(level);
+    	if (cellCount < 0) {
+    		mXCount = config.getXCount(level);
+    		mYCount = config.getYCount(level);
+    		return true;
+    	}
+    	if (cellCount <= 0) {
+    		return false;
+    	}
     	// Note: ((mXCount - 1) * cellSize * (mYCount - 1) * cellSize) == totalUseableArea
-    	int cellSize = (int)Math.sqrt(((mHeight -  2 * mPathWidth) * (mWidth - 2 * mPathWidth)) / 
-    									(mLevelStartCount + level * mLevelDeltaCount));
+    	int cellSize = (int)Math.sqrt(((mHeight -  2 * mPathWidth) * (mWidth - 2 * mPathWidth)) / cellCount);
+    	if (cellSize <= 0) {
+    		return false;
+    	}
 		mXCount = mWidth/cellSize + 1;
 		mYCount = mHeight/cellSize + 1;
-    	junctions = new VertexContainer[mYCount * mXCount];
-		for (int y = 0; y < mYCount; y++) {
-			for (int x = 0; x < mXCount; x++) {
-				int id = y * mXCount + x;
-				// Center the vertices leaving mPathWidth space in all direction
-				Location loc = new Location(mPathWidth + (x * (mWidth - 2 * mPathWidth))/(mXCount - 1), 
-											mPathWidth + (y * (mHeight - 2 * mPathWidth))/(mYCount - 1));
-				junctions[id] = new VertexContainer(new Vertex(loc, id));		
-			}
-		}
 		return true;
 	}
 	
-	private void generateRandomLinks() {
-		beadStart = junctions[0].vertex;
-    	beadEnd = junctions[0].vertex;
-		Stack<Integer> stack = new Stack<Integer>();
-		stack.push(0);
-		junctions[0].distance = 0;
-		visitVertexIterative(stack);
-		for (int i = 0; i < junctions.length; i++) {
-			if (junctions[i].mVisited == 0)
-				continue;
-			if (junctions[i].distance > junctions[beadEnd.getIndex()].distance) {
-				// Update the farthest known vertex
-				beadEnd = junctions[i].vertex;
-			}
-		}	
-	}
-	
-	@SuppressWarnings("unused")
-	private void visitVertexRecursive(Stack<Integer> stack) {
-		junctions[stack.peek()].mVisited++;
-		int neighbor = selectNeighbor(stack.peek());
-		if (neighbor > 0) {
-			// Found an unvisited neighbor.  
-			junctions[stack.peek()].edges.add(neighbor);
-			int currentDistance = junctions[stack.peek()].distance;
-			stack.push(neighbor);
-			if (junctions[stack.peek()].distance > currentDistance + 1) {
-				junctions[stack.peek()].distance = currentDistance + 1;
-			}
-			visitVertexRecursive(stack);
-		}
-		else {
-			stack.pop();
-			if (stack.isEmpty())
-				return;
-			visitVertexRecursive(stack);
+	/*
+	 * Only reads the builder's configuration so candidates may be generated
+	 * concurrently as long as each has its own generator
+	 */
+	private Maze generateMaze(MazeGenerator generator, long seed, int level) {
+		// Vertex locations are derived by GridMaze from the lattice position
+		GridMaze grid = new GridMaze(mXCount, mYCount, mWidth, mHeight, mPathWidth);
+		generator.generate(grid, new Random(seed));
+		int count = grid.getVertexCount();
+		int distance[] = new int[count];
+		int queue[] = new int[count];
+		int start = 0;
+		int end = findFarthest(grid, start, distance, queue);
+		if (mDiameterEndpoints) {
+			// In a tree the vertex farthest from any vertex is one end of a
+			// longest path; the vertex farthest from that is the other end
+			start = end;
+			end = findFarthest(grid, start, distance, queue);
 		}
+		
+		Bead bead = new Bead(grid, grid.getVertex(start), 10);
+		Maze maze = new Maze(bead, grid, grid.getVertex(end), mHeight, mWidth, mPathWidth / 2);
+		maze.setOrigin(level, seed);
+		return maze;
 	}
-
+	
 	/*
-	 * This function has to be iterative, recursive version overflows stack
+	 * Breadth first search over the generated maze. Returns the vertex with
+	 * the longest path from start. distance and queue are scratch buffers 
+	 * of vertex count size so that repeated searches do not allocate.
 	 */
-	private void visitVertexIterative(Stack<Integer> stack) {
-		while (!stack.isEmpty()) {
-			junctions[stack.peek()].mVisited++;
-			int neighbor = selectNeighbor(stack.peek());
-			if (neighbor > 0) {
-				// Found an unvisited neighbor.  
-				junctions[stack.peek()].edges.add(neighbor);
-				int currentDistance = junctions[stack.peek()].distance;
-				stack.push(neighbor);
-				if (junctions[stack.peek()].distance > currentDistance + 1) {
-					junctions[stack.peek()].distance = currentDistance + 1;
-				}
+	private static int findFarthest(GridMaze grid, int start, int distance[], int queue[]) {
+		Arrays.fill(distance, -1);
+		int head = 0;
+		int tail = 0;
+		queue[tail++] = start;
+		distance[start] = 0;
+		int farthest = start;
+		while (head < tail) {
+			int id = queue[head++];
+			if (distance[id] > distance[farthest]) {
+				farthest = id;
 			}
-			else {
-				stack.pop();	
+			for (Direction dir : mDirections) {
+				int next = grid.getNeighbor(id, dir);
+				if ((next >= 0) && (distance[next] < 0)) {
+					distance[next] = distance[id] + 1;
+					queue[tail++] = next;
+				}
 			}
 		}
+		return farthest;
 	}
-	
-	private int selectNeighbor(int id) {
-		// Get the co-ordinates of this id
-		int x = id % mXCount;
-		int y = id / mXCount;
-		// Next populate an array of it valid neighbors
-		int neighbor[] = {-1, -1, -1, -1}; // E, W, N, S
-		if ((x + 1) < mXCount) {
-			neighbor[0] = y * mXCount + x + 1;
-		}
-		if ((x - 1) >= 0) {
-			neighbor[1] = y * mXCount + x - 1;
-		}
-		if ((y - 1) >= 0) {
-			neighbor[2] = (y - 1) * mXCount + x;
-		}
-		if ((y + 1) < mYCount) {
-			neighbor[3] = (y + 1) * mXCount + x;
-		}
-		
-		// Now randomly select one neighbor	
-		int validNeighborCount = 0;
-		for (int i = 0; i < neighbor.length; i++) {
-			if (neighbor[i] < 0) // happens for vertices on the boundary 
-				continue;
-			if (junctions[neighbor[i]].mVisited >= mVisitedMax) {
-				neighbor[i] = -1;
-				continue;
-			}
-			validNeighborCount++;
-		}
-		
-		if (validNeighborCount == 0)
-			return -1;
-	
-		// Collect the valid ids in neighbor array and pack them up in the front
-		int j = 0;
-		for (int i = 0; i < neighbor.length; i++) {
-			if (neighbor[i] < 0)
-				continue;
-			neighbor[j++] = neighbor[i];
-		}
-		
-		if (validNeighborCount == 1)
-			return neighbor[0];
-		
-		return neighbor[mRandGen.nextInt(validNeighborCount)];
-	}	
 }
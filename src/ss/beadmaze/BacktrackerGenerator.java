@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2010, 2012, Sonal Santan < sonal DOT santan AT gmail DOT com >
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+
+package ss.beadmaze;
+
+import java.util.Random;
+
+import ss.beadmaze.Maze.Direction;
+
+/*
+ * Randomized depth first search. Produces long winding corridors with few
+ * dead ends. Needs a visited bit per cell and a stack as deep as the 
+ * longest path.
+ *
+ * The stack is a plain int array and the neighbor candidates go into a
+ * buffer reused across steps, so a step neither allocates nor locks.
+ */
+public class BacktrackerGenerator implements MazeGenerator {
+	private static final Direction mDirections[] = {Direction.EAST, Direction.WEST, Direction.NORTH, Direction.SOUTH};
+	private GridMaze mGrid = null;
+	private Random mRandGen = null;
+	private long mVisited[] = null;
+	private final int mNeighbor[] = new int[mDirections.length];
+	
+	public void generate(GridMaze grid, Random rand) {
+		mGrid = grid;
+		mRandGen = rand;
+		int count = grid.getVertexCount();
+		mVisited = new long[(count + 63) >>> 6];
+		// A path never visits a cell twice so it is at most count deep
+		int stack[] = new int[count];
+		stack[0] = 0;
+		visitVertexIterative(stack);
+		mVisited = null;
+		mGrid = null;
+		mRandGen = null;
+	}
+	
+	/*
+	 * This function has to be iterative, recursive version overflows stack
+	 */
+	private void visitVertexIterative(int stack[]) {
+		int top = 0;
+		setVisited(stack[0]);
+		while (top >= 0) {
+			int id = stack[top];
+			int dir = selectNeighbor(id);
+			if (dir >= 0) {
+				// Found an unvisited neighbor.  
+				mGrid.addLink(id, mDirections[dir]);
+				int next = mGrid.getAdjacent(id, mDirections[dir]);
+				setVisited(next);
+				stack[++top] = next;
+			}
+			else {
+				top--;	
+			}
+		}
+	}
+	
+	private boolean isVisited(int id) {
+		return (mVisited[id >>> 6] & (1L << id)) != 0;
+	}
+	
+	private void setVisited(int id) {
+		mVisited[id >>> 6] |= (1L << id);
+	}
+	
+	/*
+	 * Returns the direction index of a random unvisited neighbor or -1
+	 */
+	private int selectNeighbor(int id) {
+		// Next populate an array of it valid neighbors
+		int validNeighborCount = 0;
+		for (int i = 0; i < mDirections.length; i++) {
+			int adjacent = mGrid.getAdjacent(id, mDirections[i]);
+			if (adjacent < 0) // happens for vertices on the boundary 
+				continue;
+			if (isVisited(adjacent))
+				continue;
+			mNeighbor[validNeighborCount++] = i;
+		}
+		
+		if (validNeighborCount == 0)
+			return -1;
+	
+		if (validNeighborCount == 1)
+			return mNeighbor[0];
+		
+		return mNeighbor[mRandGen.nextInt(validNeighborCount)];
+	}	
+}
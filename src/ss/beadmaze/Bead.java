@@ -24,47 +24,91 @@ import ss.beadmaze.Maze.Orientation;
 import ss.beadmaze.Maze.Direction;
 
 public class Bead {
-	private Edge edge;
-	private Location currentLocation;
-	private Vertex ver1;
-	private Vertex ver2;
-	public Bead(Edge e, Vertex v1, int g) {
+	private MazeTopology edge;
+	// The bead position is kept in primitive fields so that moving the bead
+	// does not allocate
+	private int locX;
+	private int locY;
+	private int ver1;
+	private int ver2;
+	public Bead(MazeTopology e, Vertex v1, int g) {
 		edge = e;
-		ver1 = v1;
-		ver2 = v1;
-		// Always have a captive copy of Location object we own since 
-		// we call its mutable functions. 
-		currentLocation = new Location(v1.getLocation());
-		assert(ver1.getDirection(ver2) != Direction.ERROR);
+		move(v1.getIndex());
 	}
 
-	public Bead(Edge e, Vertex v1, Vertex v2, Location l, int g) {
+	public Bead(MazeTopology e, Vertex v1, Vertex v2, Location l, int g) {
 		edge = e;
-		ver1 = v1;
-		ver2 = v2;
-		// Always have a captive copy of Location object we own since 
-		// we call its mutable functions. 
-		currentLocation = new Location(l);
+		move(v1.getIndex(), v2.getIndex(), l.getX(), l.getY());
 	}
 	
-	public Location getCurrentLocation() {
-		return currentLocation;
+	public int getX() {
+		return locX;
+	}
+	
+	public int getY() {
+		return locY;
+	}
+	
+	/*
+	 * Copy the current location into the caller provided loc
+	 */
+	public void getCurrentLocation(Location loc) {
+		loc.moveTo(locX, locY);
 	}
 
 	Vertex getVertex1() {
-		return ver1;
+		return edge.getVertex(ver1);
 	}
 
 	Vertex getVertex2() {
+		return edge.getVertex(ver2);
+	}
+	
+	int getVertexId1() {
+		return ver1;
+	}
+	
+	int getVertexId2() {
 		return ver2;
 	}
 
+	private Direction getDirection(int from, int to) {
+		Direction dir = Location.getDirection(edge.getX(from), edge.getY(from), edge.getX(to), edge.getY(to));
+		assert(dir != Direction.ERROR);
+		return dir;
+	}
+	
+	private int getDistance(int target, Orientation orient) {
+		if (orient == Orientation.X_AXIS) {
+			return edge.getX(target) - locX;
+		}
+		else if (orient == Orientation.Y_AXIS) {
+			return edge.getY(target) - locY;
+		}
+		else {
+			assert(false);
+			return 0;
+		}
+	}
+	
+	private void moveBy(int val, Orientation orient) {
+		if (orient == Orientation.X_AXIS) {
+			locX += val;
+		}
+		else if (orient == Orientation.Y_AXIS) {
+			locY += val;
+		}
+		else {
+			assert(false);
+		}
+	}
+
 	int move(int total, Orientation orient, int beadJumpGap) {
 		if (total == 0) {
 			return 0;
 		}
 		assert(orient != Orientation.NONE);
-		Direction currentDir = ver1.getDirection(ver2);
+		Direction currentDir = getDirection(ver1, ver2);
 		Orientation currentOrient = Edge.getOrientation(currentDir);
 
 		if (currentOrient == Orientation.NONE) {
@@ -84,9 +128,9 @@ public class Bead {
 			else {
 				dir = (total > 0) ? Direction.SOUTH : Direction.NORTH;
 			}
-			Vertex vnext = edge.findVertex(ver2, dir);
-			if (vnext == null) {
-				// There is private int trackJumpPlay = 10;no vertex in that direction. e.g. NORTH in our case
+			int vnext = edge.getNeighbor(ver2, dir);
+			if (vnext < 0) {
+				// There is no vertex in that direction. e.g. NORTH in our case
 				return 0;
 			}
 			// So we found a vertex in the direction we intend to move. If
@@ -112,8 +156,8 @@ public class Bead {
 			// Here we handle trackJumpPlay
 			Orientation tangent = Maze.getOpposite(currentOrient);
 			assert(tangent == orient);
-			int dist1 = currentLocation.getDistance(ver1.getLocation(), currentOrient);
-			int dist2 = currentLocation.getDistance(ver2.getLocation(), currentOrient);
+			int dist1 = getDistance(ver1, currentOrient);
+			int dist2 = getDistance(ver2, currentOrient);
 			if ((Math.abs(dist1) < Math.abs(dist2)) && 
 					(Math.abs(dist1) <= beadJumpGap)) {
 				// We need to close up to ver1 first and then go in the direction requested
@@ -145,22 +189,22 @@ public class Bead {
 			return 0;
 		}
 
-		Direction currentDir = ver1.getDirection(ver2);
+		Direction currentDir = getDirection(ver1, ver2);
 
 		if (targetDir != currentDir) {
-			Vertex swap = ver1;
+			int swap = ver1;
 			ver1 = ver2;
 			ver2 = swap;
 		}		
 
-		int dist = currentLocation.getDistance(ver2.getLocation(), orient);
+		int dist = getDistance(ver2, orient);
 
 		if (Math.abs(total) < Math.abs(dist)) {
-			currentLocation.moveBy(total, orient);
+			moveBy(total, orient);
 			return total;
 		}
 		else if (Math.abs(total) > Math.abs(dist)) {
-			currentLocation.moveBy(dist, orient);
+			moveBy(dist, orient);
 			ver1 = ver2;
 			int result = dist;
 			result += move(total - dist, orient, beadJumpGap);
@@ -168,25 +212,23 @@ public class Bead {
 		}
 		else {
 			assert(total == dist); 
-			currentLocation.moveBy(dist, orient);
+			moveBy(dist, orient);
 			ver1 = ver2;
 			return dist;
 		}
 	}
 
-	void move(Vertex vertex) {
+	void move(int vertex) {
 		ver1 = vertex;
 		ver2 = vertex;
-		// Always have a captive copy of Location object we own since 
-		// we call its mutable functions. 
-		currentLocation = new Location(ver1.getLocation());
+		locX = edge.getX(vertex);
+		locY = edge.getY(vertex);
 	}
 	
-	void move(Vertex vertex1, Vertex vertex2, Location loc) {
+	void move(int vertex1, int vertex2, int x, int y) {
 		ver1 = vertex1;
 		ver2 = vertex2;
-		// Always have a captive copy of Location object we own since 
-		// we call its mutable functions. 
-		currentLocation = new Location(loc);
+		locX = x;
+		locY = y;
 	}
 }
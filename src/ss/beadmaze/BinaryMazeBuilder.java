@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2010, 2012, Sonal Santan < sonal DOT santan AT gmail DOT com >
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+
+
+package ss.beadmaze;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import ss.beadmaze.Maze.Direction;
+
+/*
+ * Loads a maze written by BinaryView. Co-ordinates are read straight into
+ * an Edge, the links are then resolved against the saved co-ordinates and
+ * only at the end are the locations scaled to the current screen. 
+ */
+public class BinaryMazeBuilder {
+	private static final Direction mDirections[] = {Direction.EAST, Direction.WEST, Direction.NORTH, Direction.SOUTH};
+	private int height = 0;
+	private int width = 0;
+	private int mPathWidth = 0;
+	private InputStream fileStream = null;
+	
+	/*
+	 * A width or height which is not positive keeps the saved dimensions
+	 */
+	public BinaryMazeBuilder(int w, int h, int p) {
+		width = w;
+		height = h;
+		mPathWidth = p;
+	}
+	
+	/*
+	 * Peek whether stream holds the binary format. The stream must support
+	 * mark() and is left at its current position.
+	 */
+	public static boolean isBinary(InputStream stream) throws IOException {
+		stream.mark(4);
+		int magic = 0;
+		for (int i = 0; i < 4; i++) {
+			int b = stream.read();
+			if (b < 0) {
+				stream.reset();
+				return false;
+			}
+			magic = (magic << 8) | b;
+		}
+		stream.reset();
+		return (magic == BinaryView.mMagic);
+	}
+	
+	public Maze build(String binIn) {
+		FileInputStream f = null;
+		try {
+			f = new FileInputStream(binIn);
+		} catch (FileNotFoundException e) {
+			e.printStackTrace();
+			return null;
+		}
+		Maze maze = build(f);
+		try {
+			f.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return maze;
+	}
+	
+	public Maze build(InputStream stream) {
+		fileStream = new BufferedInputStream(stream, 1 << 16);
+		try {
+			return read();
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		} finally {
+			fileStream = null;
+		}
+	}
+	
+	private Maze read() throws IOException {
+		if (readInt() != BinaryView.mMagic) {
+			throw new IOException("Not a binary maze");
+		}
+		int version = readVarint();
+		if (version != BinaryView.mVersion) {
+			throw new IOException("Unsupported version " + version);
+		}
+		int count = readVarint();
+		int fileWidth = readVarint();
+		int fileHeight = readVarint();
+		int start = readVarint();
+		int end = readVarint();
+		int beadV1 = readVarint();
+		int beadV2 = readVarint();
+		int beadX = readVarint();
+		int beadY = readVarint();
+		if ((count <= 0) || (fileWidth <= 0) || (fileHeight <= 0) || (start >= count) || (end >= count) ||
+			(beadV1 >= count) || (beadV2 >= count) || (start < 0) || (end < 0) || (beadV1 < 0) || (beadV2 < 0)) {
+			throw new IOException("Invalid header");
+		}
+		
+		Edge edge = new Edge(count);
+		int x = 0;
+		int y = 0;
+		for (int i = 0; i < count; i++) {
+			x += unzigzag(readVarint());
+			y += unzigzag(readVarint());
+			if ((x < 0) || (x > BinaryView.mMaxCoordinate) || (y < 0) || (y > BinaryView.mMaxCoordinate)) {
+				throw new IOException("Invalid location of " + i);
+			}
+			edge.setLocation(i, x, y);
+		}
+		
+		readLinks(edge);
+		
+		int w = (width > 0) ? width : fileWidth;
+		int h = (height > 0) ? height : fileHeight;
+		if ((w != fileWidth) || (h != fileHeight)) {
+			for (int i = 0; i < count; i++) {
+				edge.setLocation(i, (edge.getX(i) * w) / fileWidth, (edge.getY(i) * h) / fileHeight);
+			}
+			beadX = (beadX * w) / fileWidth;
+			beadY = (beadY * h) / fileHeight;
+		}
+		
+		Bead bead = new Bead(edge, edge.getVertex(beadV1), edge.getVertex(beadV2), new Location(beadX, beadY), 10);
+		return new Maze(bead, edge, edge.getVertex(start), edge.getVertex(end), h, w, mPathWidth / 2);
+	}
+	
+	/*
+	 * East and south links are resolved to the next vertex on the line; the
+	 * west and north bits must then agree with what their neighbors said
+	 */
+	private void readLinks(Edge edge) throws IOException {
+		int count = edge.getVertexCount();
+		int nextInRow[] = BinaryView.getNextOnLine(edge, true);
+		int nextInColumn[] = BinaryView.getNextOnLine(edge, false);
+		byte masks[] = new byte[(count + 1) / 2];
+		readFully(masks);
+		for (int i = 0; i < count; i++) {
+			int mask = getMask(masks, i);
+			if ((mask & (1 << Direction.EAST.ordinal())) != 0) {
+				if (nextInRow[i] < 0) {
+					throw new IOException("Dangling link of " + i);
+				}
+				edge.addLinks(i, Direction.EAST, nextInRow[i]);
+			}
+			if ((mask & (1 << Direction.SOUTH.ordinal())) != 0) {
+				if (nextInColumn[i] < 0) {
+					throw new IOException("Dangling link of " + i);
+				}
+				edge.addLinks(i, Direction.SOUTH, nextInColumn[i]);
+			}
+		}
+		for (int i = 0; i < count; i++) {
+			int mask = 0;
+			for (Direction dir : mDirections) {
+				if (edge.getNeighbor(i, dir) >= 0) {
+					mask |= 1 << dir.ordinal();
+				}
+			}
+			if (mask != getMask(masks, i)) {
+				throw new IOException("Inconsistent links of " + i);
+			}
+		}
+	}
+	
+	private static int getMask(byte masks[], int id) {
+		return (masks[id >> 1] >> ((id & 1) << 2)) & 0xf;
+	}
+	
+	private static int unzigzag(int value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+	
+	private int readByte() throws IOException {
+		int b = fileStream.read();
+		if (b < 0) {
+			throw new EOFException();
+		}
+		return b;
+	}
+	
+	private void readFully(byte buffer[]) throws IOException {
+		int offset = 0;
+		while (offset < buffer.length) {
+			int n = fileStream.read(buffer, offset, buffer.length - offset);
+			if (n < 0) {
+				throw new EOFException();
+			}
+			offset += n;
+		}
+	}
+	
+	private int readInt() throws IOException {
+		int value = 0;
+		for (int i = 0; i < 4; i++) {
+			value = (value << 8) | readByte();
+		}
+		return value;
+	}
+	
+	private int readVarint() throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			int b = readByte();
+			value |= (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Malformed varint");
+	}
+}
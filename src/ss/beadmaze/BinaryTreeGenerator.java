@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2010, 2012, Sonal Santan < sonal DOT santan AT gmail DOT com >
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+
+package ss.beadmaze;
+
+import java.util.Random;
+
+import ss.beadmaze.Maze.Direction;
+
+/*
+ * Binary tree. Every cell independently opens a passage either NORTH or 
+ * WEST. The fastest generator and needs no memory at all, but the maze has
+ * a strong diagonal bias and two unbroken corridors along the top row and
+ * the left column.
+ */
+public class BinaryTreeGenerator implements MazeGenerator {
+	public void generate(GridMaze grid, Random rand) {
+		int count = grid.getVertexCount();
+		for (int id = 1; id < count; id++) {
+			boolean canGoNorth = grid.getAdjacent(id, Direction.NORTH) >= 0;
+			boolean canGoWest = grid.getAdjacent(id, Direction.WEST) >= 0;
+			if (canGoNorth && canGoWest) {
+				grid.addLink(id, rand.nextBoolean() ? Direction.NORTH : Direction.WEST);
+			}
+			else if (canGoNorth) {
+				grid.addLink(id, Direction.NORTH);
+			}
+			else {
+				grid.addLink(id, Direction.WEST);
+			}
+		}
+	}
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2010, 2012, Sonal Santan < sonal DOT santan AT gmail DOT com >
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+
+
+package ss.beadmaze;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import ss.beadmaze.Maze.Direction;
+
+/*
+ * Writes a maze in the compact binary format read by BinaryMazeBuilder.
+ * All numbers are unsigned LEB128 varints, signed ones zigzag encoded.
+ *
+ *   magic "BMZB", version
+ *   vertexcount, width, height, start, end, bead v1, bead v2, bead x, bead y
+ *   per vertex in id order: x and y as deltas from the previous vertex
+ *   per vertex in id order: a 4 bit mask of its links, two vertices a byte,
+ *                           bit Direction.ordinal(), low nibble first
+ *
+ * Links are not stored as ids. A link always leads to the nearest vertex
+ * on the same row or column in its direction, which the reader recovers
+ * from the co-ordinates. Mazes where this does not hold are rejected.
+ */
+public class BinaryView {
+	static final int mMagic = 0x424d5a42;
+	static final int mVersion = 1;
+	// Co-ordinates are packed into sort keys alongside the id
+	static final int mMaxCoordinate = 0xffff;
+	private static final Direction mDirections[] = {Direction.EAST, Direction.WEST, Direction.NORTH, Direction.SOUTH};
+	private Maze maze = null;
+	private OutputStream fileStream = null;
+	// Link masks as computed by canEncode()
+	private byte mMasks[] = null;
+	
+	public BinaryView(Maze m) {
+		maze = m;
+	}
+	
+	/*
+	 * Whether the maze can be represented in this format. If not, the 
+	 * caller may fall back to XMLView.
+	 */
+	public boolean canEncode() {
+		if (mMasks == null) {
+			mMasks = encodeLinks(maze.getTopology());
+		}
+		return (mMasks != null);
+	}
+	
+	/*
+	 * Nothing is written if the maze can not be represented, see 
+	 * canEncode(). Also returns false if writing fails, in which case the
+	 * stream holds a partial file.
+	 */
+	public boolean print(OutputStream f) {
+		if (!canEncode()) {
+			return false;
+		}
+		MazeTopology edge = maze.getTopology();
+		byte masks[] = mMasks;
+		try {
+			fileStream = new BufferedOutputStream(f, 1 << 16);
+			printHeader(edge);
+			printLocations(edge);
+			fileStream.write(masks);
+			fileStream.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		} finally {
+			fileStream = null;
+		}
+		return true;
+	}
+	
+	private void printHeader(MazeTopology edge) throws IOException {
+		Bead bead = maze.getBead();
+		printInt(mMagic);
+		printVarint(mVersion);
+		printVarint(edge.getVertexCount());
+		printVarint(maze.getWidth());
+		printVarint(maze.getHeight());
+		printVarint(maze.getStartVertex().getIndex());
+		printVarint(maze.getEndVertex().getIndex());
+		printVarint(bead.getVertexId1());
+		printVarint(bead.getVertexId2());
+		printVarint(bead.getX());
+		printVarint(bead.getY());
+	}
+	
+	private void printLocations(MazeTopology edge) throws IOException {
+		int count = edge.getVertexCount();
+		int x = 0;
+		int y = 0;
+		for (int i = 0; i < count; i++) {
+			printVarint(zigzag(edge.getX(i) - x));
+			printVarint(zigzag(edge.getY(i) - y));
+			x = edge.getX(i);
+			y = edge.getY(i);
+		}
+	}
+	
+	/*
+	 * Returns the packed link masks, or null if some link does not lead to
+	 * the nearest vertex on its line or a co-ordinate is out of range
+	 */
+	private static byte[] encodeLinks(MazeTopology edge) {
+		int count = edge.getVertexCount();
+		for (int i = 0; i < count; i++) {
+			if ((edge.getX(i) < 0) || (edge.getX(i) > mMaxCoordinate) || 
+				(edge.getY(i) < 0) || (edge.getY(i) > mMaxCoordinate)) {
+				return null;
+			}
+		}
+		int nextInRow[] = getNextOnLine(edge, true);
+		int nextInColumn[] = getNextOnLine(edge, false);
+		byte masks[] = new byte[(count + 1) / 2];
+		for (int i = 0; i < count; i++) {
+			int mask = 0;
+			for (Direction dir : mDirections) {
+				int v = edge.getNeighbor(i, dir);
+				if (v < 0) {
+					continue;
+				}
+				boolean valid;
+				switch (dir) {
+				case EAST:
+					valid = (nextInRow[i] == v);
+					break;
+				case WEST:
+					valid = (nextInRow[v] == i);
+					break;
+				case SOUTH:
+					valid = (nextInColumn[i] == v);
+					break;
+				default:
+					valid = (nextInColumn[v] == i);
+					break;
+				}
+				if (!valid) {
+					return null;
+				}
+				mask |= 1 << dir.ordinal();
+			}
+			masks[i >> 1] |= mask << ((i & 1) << 2);
+		}
+		return masks;
+	}
+	
+	/*
+	 * For every vertex the id of the next vertex east of it on the same row
+	 * (rows true) or south of it on the same column, -1 if there is none. 
+	 * Co-ordinates must be within [0, mMaxCoordinate].
+	 */
+	static int[] getNextOnLine(MazeTopology edge, boolean rows) {
+		int count = edge.getVertexCount();
+		long keys[] = new long[count];
+		for (int i = 0; i < count; i++) {
+			long line = rows ? edge.getY(i) : edge.getX(i);
+			long position = rows ? edge.getX(i) : edge.getY(i);
+			keys[i] = (line << 48) | (position << 32) | i;
+		}
+		Arrays.sort(keys);
+		int next[] = new int[count];
+		Arrays.fill(next, -1);
+		for (int i = 1; i < count; i++) {
+			if ((keys[i - 1] >>> 48) == (keys[i] >>> 48)) {
+				next[(int)keys[i - 1]] = (int)keys[i];
+			}
+		}
+		return next;
+	}
+	
+	private static int zigzag(int value) {
+		return (value << 1) ^ (value >> 31);
+	}
+	
+	private void printInt(int value) throws IOException {
+		fileStream.write(value >>> 24);
+		fileStream.write(value >>> 16);
+		fileStream.write(value >>> 8);
+		fileStream.write(value);
+	}
+	
+	private void printVarint(int value) throws IOException {
+		while ((value & ~0x7f) != 0) {
+			fileStream.write((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		fileStream.write(value);
+	}
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2010, 2012, Sonal Santan < sonal DOT santan AT gmail DOT com >
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+
+package ss.beadmaze;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import ss.beadmaze.Maze.Direction;
+
+/*
+ * Maze topology kept outside the Java heap in a ByteBuffer. The buffer is 
+ * either a direct buffer or a MappedByteBuffer over a file, in which case
+ * reopening the file gives the maze back without any parsing. The layout 
+ * is a fixed size header followed by one fixed size record per vertex:
+ *
+ *   header: magic, version, vertex count, reserved   (4 ints)
+ *   vertex: x, y, EAST, WEST, NORTH, SOUTH neighbor  (6 ints)
+ *
+ * A missing neighbor is stored as -1. All values are little endian. Since
+ * a single ByteBuffer is indexed by int this backend holds up to about 89
+ * million vertices.
+ */
+public class BufferTopology implements MazeTopology {
+	private static final int mMagic = 0x5a4d4442; // "BDMZ"
+	private static final int mVersion = 1;
+	private static final int mHeaderSize = 4 * 4;
+	private static final int mDirectionCount = Direction.NONE.ordinal();
+	private static final int mRecordSize = (2 + mDirectionCount) * 4;
+	private static final Direction mDirections[] = Direction.values();
+
+	private final ByteBuffer mBuffer;
+	private final int mVertexCount;
+
+	public static long getSize(int count) {
+		return mHeaderSize + (long)count * mRecordSize;
+	}
+
+	/*
+	 * Create an empty topology of count vertices in a direct buffer. Returns
+	 * null if count vertices do not fit into one buffer.
+	 */
+	public static BufferTopology allocateDirect(int count) {
+		if (!fitsBuffer(count)) {
+			return null;
+		}
+		return new BufferTopology(ByteBuffer.allocateDirect((int)getSize(count)), count);
+	}
+
+	/*
+	 * Create an empty topology of count vertices backed by file. Any existing
+	 * content of the file is discarded. Returns null if count vertices do
+	 * not fit into one buffer.
+	 */
+	public static BufferTopology create(String file, int count) {
+		if (!fitsBuffer(count)) {
+			return null;
+		}
+		try {
+			RandomAccessFile f = new RandomAccessFile(file, "rw");
+			try {
+				f.setLength(getSize(count));
+				return new BufferTopology(f.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, getSize(count)), count);
+			}
+			finally {
+				f.close();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/*
+	 * Create an empty topology of count vertices in buffer, which must hold
+	 * at least getSize(count) bytes from index 0
+	 */
+	public static BufferTopology create(ByteBuffer buffer, int count) {
+		if ((count < 0) || (buffer.capacity() < getSize(count))) {
+			return null;
+		}
+		return new BufferTopology(buffer, count);
+	}
+
+	/*
+	 * Map a file previously populated through create(). Returns null if the
+	 * file does not hold a topology.
+	 */
+	public static BufferTopology open(String file, boolean writable) {
+		try {
+			RandomAccessFile f = new RandomAccessFile(file, writable ? "rw" : "r");
+			try {
+				if ((f.length() < mHeaderSize) || (f.length() > Integer.MAX_VALUE)) {
+					return null;
+				}
+				MappedByteBuffer buffer = f.getChannel().map(writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY,
+						                                     0, f.length());
+				return open(buffer);
+			}
+			finally {
+				f.close();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/*
+	 * Attach to a buffer which already holds a topology. Returns null if the
+	 * header does not match.
+	 */
+	public static BufferTopology open(ByteBuffer buffer) {
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		if ((buffer.capacity() < mHeaderSize) || (buffer.getInt(0) != mMagic) || (buffer.getInt(4) != mVersion)) {
+			return null;
+		}
+		int count = buffer.getInt(8);
+		if ((count < 0) || (buffer.capacity() < getSize(count))) {
+			return null;
+		}
+		return new BufferTopology(buffer, count, false);
+	}
+
+	private static boolean fitsBuffer(int count) {
+		return (count >= 0) && (getSize(count) <= Integer.MAX_VALUE);
+	}
+
+	private BufferTopology(ByteBuffer buffer, int count) {
+		this(buffer, count, true);
+	}
+
+	private BufferTopology(ByteBuffer buffer, int count, boolean initialize) {
+		mBuffer = buffer;
+		mBuffer.order(ByteOrder.LITTLE_ENDIAN);
+		mVertexCount = count;
+		if (!initialize) {
+			return;
+		}
+		mBuffer.putInt(0, mMagic);
+		mBuffer.putInt(4, mVersion);
+		mBuffer.putInt(8, count);
+		mBuffer.putInt(12, 0);
+		for (int i = 0; i < count; i++) {
+			for (int dir = 0; dir < mDirectionCount; dir++) {
+				mBuffer.putInt(getOffset(i) + (2 + dir) * 4, -1);
+			}
+		}
+	}
+
+	/*
+	 * Copy the vertices and links of src which must have the same number of
+	 * vertices as this topology
+	 */
+	public void copyFrom(MazeTopology src) {
+		assert(src.getVertexCount() == mVertexCount);
+		for (int i = 0; i < mVertexCount; i++) {
+			int offset = getOffset(i);
+			mBuffer.putInt(offset, src.getX(i));
+			mBuffer.putInt(offset + 4, src.getY(i));
+			for (int dir = 0; dir < mDirectionCount; dir++) {
+				mBuffer.putInt(offset + (2 + dir) * 4, src.getNeighbor(i, mDirections[dir]));
+			}
+		}
+	}
+
+	public void setLocation(int id, int x, int y) {
+		mBuffer.putInt(getOffset(id), x);
+		mBuffer.putInt(getOffset(id) + 4, y);
+	}
+
+	public void addLinks(int id1, int id2) {
+		Direction dir = Location.getDirection(getX(id1), getY(id1), getX(id2), getY(id2));
+		assert((dir != Direction.ERROR) && (dir != Direction.NONE));
+		mBuffer.putInt(getOffset(id1) + (2 + dir.ordinal()) * 4, id2);
+		mBuffer.putInt(getOffset(id2) + (2 + Edge.getOpposite(dir).ordinal()) * 4, id1);
+	}
+
+	/*
+	 * Flush changes to the backing file if this topology is memory mapped
+	 */
+	public void force() {
+		if (mBuffer instanceof MappedByteBuffer) {
+			((MappedByteBuffer)mBuffer).force();
+		}
+	}
+
+	public int getVertexCount() {
+		return mVertexCount;
+	}
+
+	public Vertex getVertex(int id) {
+		return new Vertex(new Location(getX(id), getY(id)), id);
+	}
+
+	public Vertex findVertex(Vertex node, Direction dir) {
+		int id = getNeighbor(node.getIndex(), dir);
+		return (id < 0) ? null : getVertex(id);
+	}
+
+	public int getNeighbor(int id, Direction dir) {
+		if (dir.ordinal() >= mDirectionCount) {
+			// NONE and ERROR never have a neighbor
+			return -1;
+		}
+		return mBuffer.getInt(getOffset(id) + (2 + dir.ordinal()) * 4);
+	}
+
+	public int getX(int id) {
+		return mBuffer.getInt(getOffset(id));
+	}
+
+	public int getY(int id) {
+		return mBuffer.getInt(getOffset(id) + 4);
+	}
+
+	private static int getOffset(int id) {
+		return mHeaderSize + id * mRecordSize;
+	}
+}
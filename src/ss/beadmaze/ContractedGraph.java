@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2010, 2012, Sonal Santan < sonal DOT santan AT gmail DOT com >
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+
+package ss.beadmaze;
+
+import java.util.Arrays;
+
+import ss.beadmaze.Maze.Direction;
+
+/*
+ * Decision structure of a maze. Long corridors of degree 2 junctions are
+ * collapsed so that only dead ends, branches and the pinned vertices (e.g.
+ * start and end) remain as nodes. Each edge of the contracted graph carries
+ * its length in pixels and the ordered list of vertices it collapsed. 
+ * Corridors which form a closed loop without any node are not represented.
+ * 
+ * All tables are primitive arrays; edges and the per node edge lists are
+ * stored in compressed form.
+ */
+public class ContractedGraph {
+	private static final Direction mDirections[] = {Direction.EAST, Direction.WEST, Direction.NORTH, Direction.SOUTH};
+	
+	private final int mNodeOf[];
+	private final int mEdgeOf[];
+	private final int mNodeVertex[];
+	private final int mNodeEdgeStart[];
+	private final int mNodeEdges[];
+	private final int mEdgeFrom[];
+	private final int mEdgeTo[];
+	private final int mEdgeLength[];
+	private final int mPathStart[];
+	private final int mPath[];
+	
+	public ContractedGraph(MazeTopology topology, int pinned[]) {
+		int count = topology.getVertexCount();
+		mNodeOf = new int[count];
+		mEdgeOf = new int[count];
+		Arrays.fill(mEdgeOf, -1);
+		
+		boolean isPinned[] = new boolean[count];
+		for (int i = 0; i < pinned.length; i++) {
+			isPinned[pinned[i]] = true;
+		}
+		
+		int nodeCount = 0;
+		int collapsedCount = 0;
+		int degreeSum = 0;
+		for (int i = 0; i < count; i++) {
+			int degree = getDegree(topology, i);
+			if ((degree != 2) || isPinned[i]) {
+				mNodeOf[i] = nodeCount++;
+				degreeSum += degree;
+			}
+			else {
+				mNodeOf[i] = -1;
+				collapsedCount++;
+			}
+		}
+		
+		mNodeVertex = new int[nodeCount];
+		for (int i = 0; i < count; i++) {
+			if (mNodeOf[i] >= 0) {
+				mNodeVertex[mNodeOf[i]] = i;
+			}
+		}
+		
+		// Every edge ends at two node sides, so there are degreeSum / 2 of them
+		int edgeCapacity = degreeSum / 2;
+		int edgeFrom[] = new int[edgeCapacity];
+		int edgeTo[] = new int[edgeCapacity];
+		int edgeLength[] = new int[edgeCapacity];
+		int pathStart[] = new int[edgeCapacity + 1];
+		int path[] = new int[collapsedCount];
+		int edgeCount = 0;
+		int pathCount = 0;
+		
+		for (int node = 0; node < nodeCount; node++) {
+			int from = mNodeVertex[node];
+			for (Direction dir : mDirections) {
+				int cur = topology.getNeighbor(from, dir);
+				if (cur < 0) {
+					continue;
+				}
+				if (mNodeOf[cur] >= 0) {
+					// Direct link between two nodes, record it from the lower end only
+					if (from > cur) {
+						continue;
+					}
+				}
+				else if (mEdgeOf[cur] >= 0) {
+					// Corridor already walked from its other end
+					continue;
+				}
+				int prev = from;
+				int length = getDistance(topology, prev, cur);
+				while (mNodeOf[cur] < 0) {
+					mEdgeOf[cur] = edgeCount;
+					path[pathCount++] = cur;
+					int next = -1;
+					for (Direction d : mDirections) {
+						int candidate = topology.getNeighbor(cur, d);
+						if ((candidate >= 0) && (candidate != prev)) {
+							next = candidate;
+							break;
+						}
+					}
+					assert(next >= 0);
+					prev = cur;
+					cur = next;
+					length += getDistance(topology, prev, cur);
+				}
+				edgeFrom[edgeCount] = node;
+				edgeTo[edgeCount] = mNodeOf[cur];
+				edgeLength[edgeCount] = length;
+				pathStart[++edgeCount] = pathCount;
+			}
+		}
+		
+		mEdgeFrom = Arrays.copyOf(edgeFrom, edgeCount);
+		mEdgeTo = Arrays.copyOf(edgeTo, edgeCount);
+		mEdgeLength = Arrays.copyOf(edgeLength, edgeCount);
+		mPathStart = Arrays.copyOf(pathStart, edgeCount + 1);
+		mPath = Arrays.copyOf(path, pathCount);
+		
+		mNodeEdgeStart = new int[nodeCount + 1];
+		for (int e = 0; e < edgeCount; e++) {
+			mNodeEdgeStart[mEdgeFrom[e] + 1]++;
+			mNodeEdgeStart[mEdgeTo[e] + 1]++;
+		}
+		for (int i = 1; i <= nodeCount; i++) {
+			mNodeEdgeStart[i] += mNodeEdgeStart[i - 1];
+		}
+		mNodeEdges = new int[2 * edgeCount];
+		int fill[] = new int[nodeCount];
+		for (int e = 0; e < edgeCount; e++) {
+			mNodeEdges[mNodeEdgeStart[mEdgeFrom[e]] + fill[mEdgeFrom[e]]++] = e;
+			mNodeEdges[mNodeEdgeStart[mEdgeTo[e]] + fill[mEdgeTo[e]]++] = e;
+		}
+	}
+	
+	public int getNodeCount() {
+		return mNodeVertex.length;
+	}
+	
+	public int getEdgeCount() {
+		return mEdgeFrom.length;
+	}
+	
+	public int getNodeVertex(int node) {
+		return mNodeVertex[node];
+	}
+	
+	/*
+	 * Returns the node of vertex id or -1 if it was collapsed into an edge
+	 */
+	public int getNode(int id) {
+		return mNodeOf[id];
+	}
+	
+	/*
+	 * Returns the edge vertex id was collapsed into or -1 if it is a node
+	 */
+	public int getEdge(int id) {
+		return mEdgeOf[id];
+	}
+	
+	public int getNodeEdgeCount(int node) {
+		return mNodeEdgeStart[node + 1] - mNodeEdgeStart[node];
+	}
+	
+	public int getNodeEdge(int node, int i) {
+		return mNodeEdges[mNodeEdgeStart[node] + i];
+	}
+	
+	public int getEdgeFrom(int edge) {
+		return mEdgeFrom[edge];
+	}
+	
+	public int getEdgeTo(int edge) {
+		return mEdgeTo[edge];
+	}
+	
+	public int getOtherNode(int edge, int node) {
+		return (mEdgeFrom[edge] == node) ? mEdgeTo[edge] : mEdgeFrom[edge];
+	}
+	
+	/*
+	 * Length of the corridor in pixels
+	 */
+	public int getEdgeLength(int edge) {
+		return mEdgeLength[edge];
+	}
+	
+	/*
+	 * Number of vertices collapsed into the edge
+	 */
+	public int getEdgeVertexCount(int edge) {
+		return mPathStart[edge + 1] - mPathStart[edge];
+	}
+	
+	/*
+	 * The i-th collapsed vertex counting from the getEdgeFrom() end
+	 */
+	public int getEdgeVertex(int edge, int i) {
+		return mPath[mPathStart[edge] + i];
+	}
+	
+	public static int getDegree(MazeTopology topology, int id) {
+		int degree = 0;
+		for (Direction dir : mDirections) {
+			if (topology.getNeighbor(id, dir) >= 0) {
+				degree++;
+			}
+		}
+		return degree;
+	}
+	
+	private static int getDistance(MazeTopology topology, int v1, int v2) {
+		return Math.abs(topology.getX(v2) - topology.getX(v1)) + Math.abs(topology.getY(v2) - topology.getY(v1));
+	}
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2010, 2012, Sonal Santan < sonal DOT santan AT gmail DOT com >
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+
+
+package ss.beadmaze;
+
+/*
+ * Target difficulty expressed in the size independent MazeMetrics ratios.
+ * A target which is not positive is ignored. The distance of a maze from
+ * the profile is the sum of the squared relative errors of its metrics,
+ * so every target weighs the same whatever its scale.
+ */
+public class DifficultyProfile {
+	private final double mSolutionCoverage;
+	private final double mDeadEndDensity;
+	private final double mDecisionDensity;
+	private final double mCorridorLength;
+	
+	public DifficultyProfile(double solutionCoverage, double deadEndDensity, double decisionDensity, double corridorLength) {
+		mSolutionCoverage = solutionCoverage;
+		mDeadEndDensity = deadEndDensity;
+		mDecisionDensity = decisionDensity;
+		mCorridorLength = corridorLength;
+	}
+	
+	public double getSolutionCoverage() {
+		return mSolutionCoverage;
+	}
+	
+	public double getDeadEndDensity() {
+		return mDeadEndDensity;
+	}
+	
+	public double getDecisionDensity() {
+		return mDecisionDensity;
+	}
+	
+	public double getCorridorLength() {
+		return mCorridorLength;
+	}
+	
+	public double distance(MazeMetrics metrics) {
+		return error(metrics.getSolutionCoverage(), mSolutionCoverage) +
+		       error(metrics.getDeadEndDensity(), mDeadEndDensity) +
+		       error(metrics.getDecisionDensity(), mDecisionDensity) +
+		       error(metrics.getMeanCorridorLength(), mCorridorLength);
+	}
+	
+	private static double error(double value, double target) {
+		if (target <= 0) {
+			return 0;
+		}
+		double e = (value - target) / target;
+		return e * e;
+	}
+}
@@ -23,51 +23,94 @@ package ss.beadmaze;
 import ss.beadmaze.Maze.Direction;
 import ss.beadmaze.Maze.Orientation;
 
-import java.util.Iterator;
-import java.util.List;
-import java.util.LinkedList;
-
-public class Edge {
-	
-	// TODO: Replace the LinkedList below with Array like one below
-	//private int arr[] = new int[Direction.NONE.ordinal()];
-	private class VertexContainer {  
-		Vertex vertex;
-		List<Integer> edges;
-		public VertexContainer(Vertex ver) {
-			vertex = ver;
-			edges = new LinkedList<Integer>();    
-		}
-	}
+import java.util.Arrays;
 
+public class Edge implements MazeTopology {
+	
+	private static final int mDirectionCount = Direction.NONE.ordinal();
+	
 	/*
-	 * The graph is stored as an adjacency list here
+	 * Vertex co-ordinates are kept as parallel arrays indexed by the vertex
+	 * id. Vertex objects are only created on demand by getVertex().
 	 */
-	private VertexContainer vertexTable[];
+	private int xTable[];
+	private int yTable[];
+	
+	/*
+	 * The graph is stored as a flat adjacency table here. Slot 
+	 * (id * mDirectionCount + dir.ordinal()) holds the index of the
+	 * neighbor of vertex id in direction dir, or -1 if there is none.
+	 */
+	private int linkTable[];
 
 	public Vertex getVertex(int id) {
-		return vertexTable[id].vertex;
+		return new Vertex(new Location(xTable[id], yTable[id]), id);
 	}
 	
 	public int getVertexCount() {
-		return vertexTable.length;
+		return xTable.length;
+	}
+	
+	/*
+	 * Create a graph of count unlinked vertices all located at the origin.
+	 * Use setLocation() and addLinks() to populate it.
+	 */
+	public Edge(int count) {
+		xTable = new int[count];
+		yTable = new int[count];
+		linkTable = new int[count * mDirectionCount];
+		Arrays.fill(linkTable, -1);
 	}
 	
 	public Edge(Vertex junctions[]) {
-		vertexTable = new VertexContainer[junctions.length];
+		this(junctions.length);
 		for (int i = 0; i< junctions.length; i++) {
-			assert(vertexTable[junctions[i].getIndex()] == null);
-			vertexTable[junctions[i].getIndex()] = new VertexContainer(junctions[i]);
+			setLocation(junctions[i].getIndex(), junctions[i].getLocation().getX(), 
+					    junctions[i].getLocation().getY());
 		}
 	}
 	
+	public void setLocation(int id, int x, int y) {
+		xTable[id] = x;
+		yTable[id] = y;
+	}
+	
 	public void addLinks(Vertex v1, Vertex v2) {
-		Direction dir = v1.getDirection(v2);
+		addLinks(v1.getIndex(), v2.getIndex());
+	}
+	
+	public void addLinks(int id1, int id2) {
+		Direction dir = Location.getDirection(xTable[id1], yTable[id1], xTable[id2], yTable[id2]);
 		assert((dir != Direction.ERROR) && ( dir != Direction.NONE));
-		if (!vertexTable[v1.getIndex()].edges.contains(v2.getIndex()))
-			vertexTable[v1.getIndex()].edges.add(v2.getIndex());
-		if (!vertexTable[v2.getIndex()].edges.contains(v1.getIndex()))
-			vertexTable[v2.getIndex()].edges.add(v1.getIndex());
+		linkTable[id1 * mDirectionCount + dir.ordinal()] = id2;
+		linkTable[id2 * mDirectionCount + getOpposite(dir).ordinal()] = id1;
+	}
+	
+	/*
+	 * Link id1 to id2 which lies in direction dir of it. Unlike the above
+	 * this does not need the locations, so links may be added before the
+	 * neighbor has been placed.
+	 */
+	public void addLinks(int id1, Direction dir, int id2) {
+		linkTable[id1 * mDirectionCount + dir.ordinal()] = id2;
+		linkTable[id2 * mDirectionCount + getOpposite(dir).ordinal()] = id1;
+	}
+	
+	public static Direction getOpposite(Direction dir) {
+		switch (dir) {
+		case EAST:
+			return Direction.WEST;
+		case WEST:
+			return Direction.EAST;
+		case NORTH:
+			return Direction.SOUTH;
+		case SOUTH:
+			return Direction.NORTH;
+		case NONE:
+			return Direction.NONE;
+		default:
+			return Direction.ERROR;
+		}
 	}
 	
 	public static Orientation getOrientation(Direction dir) {
@@ -86,12 +129,23 @@ public class Edge {
 	}
 	
 	public Vertex findVertex(Vertex node, Direction dir) {
-		for (Iterator<Integer> j = vertexTable[node.getIndex()].edges.iterator(); j.hasNext();) { 
-			Vertex ver = vertexTable[j.next()].vertex;
-			if (node.getDirection(ver) == dir) {
-				return ver;
-			}
+		int id = getNeighbor(node.getIndex(), dir);
+		return (id < 0) ? null : getVertex(id);
+	}
+	
+	public int getNeighbor(int id, Direction dir) {
+		if (dir.ordinal() >= mDirectionCount) {
+			// NONE and ERROR never have a neighbor
+			return -1;
 		}
-		return null;		
+		return linkTable[id * mDirectionCount + dir.ordinal()];
+	}
+	
+	public int getX(int id) {
+		return xTable[id];
+	}
+	
+	public int getY(int id) {
+		return yTable[id];
 	}
 }
@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2010, 2012, Sonal Santan < sonal DOT santan AT gmail DOT com >
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+
+package ss.beadmaze;
+
+import ss.beadmaze.Maze.Direction;
+
+/*
+ * Topology of a maze laid out on a regular mXCount x mYCount lattice. Only
+ * two bits are stored per cell: whether there is a passage to the EAST and
+ * whether there is a passage to the SOUTH. WEST and NORTH passages are the
+ * EAST and SOUTH passages of the neighboring cell. Vertex co-ordinates are 
+ * derived from the cell position and the maze dimensions, so a maze of a 
+ * few million cells only needs a few hundred kilobytes.
+ */
+public class GridMaze implements LatticeTopology {
+	private static final int mEastBit = 0;
+	private static final int mSouthBit = 1;
+	private static final int mBitsPerCell = 2;
+	
+	private final int mXCount;
+	private final int mYCount;
+	private final int mWidth;
+	private final int mHeight;
+	private final int mPathWidth;
+	private final long mLinks[];
+	
+	public GridMaze(int xCount, int yCount, int w, int h, int p) {
+		assert((xCount > 0) && (yCount > 0));
+		mXCount = xCount;
+		mYCount = yCount;
+		mWidth = w;
+		mHeight = h;
+		mPathWidth = p;
+		long bits = (long)xCount * yCount * mBitsPerCell;
+		mLinks = new long[(int)((bits + 63) >>> 6)];
+	}
+	
+	public int getXCount() {
+		return mXCount;
+	}
+	
+	public int getYCount() {
+		return mYCount;
+	}
+	
+	public int getWidth() {
+		return mWidth;
+	}
+	
+	public int getHeight() {
+		return mHeight;
+	}
+	
+	public int getPathWidth() {
+		return mPathWidth;
+	}
+	
+	public int getId(int x, int y) {
+		return y * mXCount + x;
+	}
+	
+	public int getVertexCount() {
+		return mXCount * mYCount;
+	}
+	
+	public Vertex getVertex(int id) {
+		return new Vertex(new Location(getX(id), getY(id)), id);
+	}
+	
+	public Vertex findVertex(Vertex node, Direction dir) {
+		int id = getNeighbor(node.getIndex(), dir);
+		return (id < 0) ? null : getVertex(id);
+	}
+	
+	public int getX(int id) {
+		return getPosition(id % mXCount, mXCount, mWidth, mPathWidth);
+	}
+	
+	public int getY(int id) {
+		return getPosition(id / mXCount, mYCount, mHeight, mPathWidth);
+	}
+	
+	public int getColumn(int x) {
+		return getNearestIndex(x, mXCount, mWidth, mPathWidth);
+	}
+	
+	public int getRow(int y) {
+		return getNearestIndex(y, mYCount, mHeight, mPathWidth);
+	}
+	
+	/*
+	 * Co-ordinate of lattice line index out of count spread over size,
+	 * centering the vertices and leaving pathWidth space on both sides
+	 */
+	static int getPosition(int index, int count, int size, int pathWidth) {
+		if (count == 1) {
+			return pathWidth;
+		}
+		return pathWidth + (int)(((long)index * (size - 2 * pathWidth)) / (count - 1));
+	}
+	
+	/*
+	 * The lattice line out of count whose getPosition() is closest to pos
+	 */
+	static int getNearestIndex(int pos, int count, int size, int pathWidth) {
+		long span = size - 2 * pathWidth;
+		if ((count == 1) || (span <= 0)) {
+			return 0;
+		}
+		long estimate = ((long)(pos - pathWidth) * (count - 1) + span / 2) / span;
+		int index = (int)Math.max(0, Math.min(count - 1, estimate));
+		// getPosition() rounds down, which can leave a neighbor closer
+		int best = index;
+		for (int i = Math.max(index - 1, 0); i <= Math.min(index + 1, count - 1); i++) {
+			if (Math.abs(getPosition(i, count, size, pathWidth) - pos) < Math.abs(getPosition(best, count, size, pathWidth) - pos)) {
+				best = i;
+			}
+		}
+		return best;
+	}
+	
+	public int getNeighbor(int id, Direction dir) {
+		switch (dir) {
+		case EAST:
+			return testBit(id, mEastBit) ? id + 1 : -1;
+		case SOUTH:
+			return testBit(id, mSouthBit) ? id + mXCount : -1;
+		case WEST:
+			if ((id % mXCount) == 0) {
+				return -1;
+			}
+			return testBit(id - 1, mEastBit) ? id - 1 : -1;
+		case NORTH:
+			if (id < mXCount) {
+				return -1;
+			}
+			return testBit(id - mXCount, mSouthBit) ? id - mXCount : -1;
+		default:
+			return -1;
+		}
+	}
+	
+	/*
+	 * Returns the index of the adjacent cell in direction dir irrespective of
+	 * whether there is a passage to it, or -1 if dir leads out of the grid.
+	 */
+	public int getAdjacent(int id, Direction dir) {
+		switch (dir) {
+		case EAST:
+			return ((id % mXCount) + 1 < mXCount) ? id + 1 : -1;
+		case WEST:
+			return ((id % mXCount) > 0) ? id - 1 : -1;
+		case NORTH:
+			return (id >= mXCount) ? id - mXCount : -1;
+		case SOUTH:
+			return (id + mXCount < getVertexCount()) ? id + mXCount : -1;
+		default:
+			return -1;
+		}
+	}
+	
+	/*
+	 * Open a passage between cell id and its adjacent cell in direction dir
+	 */
+	public void addLink(int id, Direction dir) {
+		int other = getAdjacent(id, dir);
+		assert(other >= 0);
+		switch (dir) {
+		case EAST:
+			setBit(id, mEastBit);
+			break;
+		case SOUTH:
+			setBit(id, mSouthBit);
+			break;
+		case WEST:
+			setBit(other, mEastBit);
+			break;
+		case NORTH:
+			setBit(other, mSouthBit);
+			break;
+		default:
+			assert(false);
+			break;
+		}
+	}
+	
+	/*
+	 * Copy the passages of tile into this grid with the top left cell of the
+	 * tile placed at (x0, y0). The tile must fit into this grid.
+	 */
+	public void copyLinks(GridMaze tile, int x0, int y0) {
+		assert((x0 + tile.mXCount <= mXCount) && (y0 + tile.mYCount <= mYCount));
+		for (int y = 0; y < tile.mYCount; y++) {
+			for (int x = 0; x < tile.mXCount; x++) {
+				int from = tile.getId(x, y);
+				int to = getId(x0 + x, y0 + y);
+				if (tile.testBit(from, mEastBit)) {
+					setBit(to, mEastBit);
+				}
+				if (tile.testBit(from, mSouthBit)) {
+					setBit(to, mSouthBit);
+				}
+			}
+		}
+	}
+	
+	private boolean testBit(int id, int bit) {
+		long index = (long)id * mBitsPerCell + bit;
+		return (mLinks[(int)(index >>> 6)] & (1L << (index & 63))) != 0;
+	}
+	
+	private void setBit(int id, int bit) {
+		long index = (long)id * mBitsPerCell + bit;
+		mLinks[(int)(index >>> 6)] |= (1L << (index & 63));
+	}
+}
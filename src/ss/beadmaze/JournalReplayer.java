@@ -0,0 +1,432 @@
+/*
+ * Copyright (c) 2010, 2012, Sonal Santan < sonal DOT santan AT gmail DOT com >
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+
+
+package ss.beadmaze;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import ss.beadmaze.Maze.Direction;
+import ss.beadmaze.Maze.Orientation;
+
+/*
+ * Reads back a journal written by PlayJournal one record at a time. The
+ * bead state is tracked from the recorded deltas alone, so any point of a
+ * session can be reached with seek() without a maze. To reproduce a 
+ * session, build the maze for every START record with 
+ *
+ *   AutoMazeBuilder builder = new AutoMazeBuilder(getDisplayWidth(), 
+ *                                 getDisplayHeight(), getPathStride());
+ *   builder.setSeed(getSeed());
+ *   Maze maze = builder.build(config, getLevel());
+ *
+ * check it with matches(config, maze) and pass it to apply() for that 
+ * record and the moves after it. A RESYNC record restates the current 
+ * state; a file begun by a rotation starts with one, so build the maze 
+ * for it if there is none yet. Journals written in an older format are
+ * rejected when opened.
+ *
+ * A record cut short at the end of the file, as left by a process killed
+ * while flushing, is treated as the end of the journal.
+ */
+public class JournalReplayer {
+	public enum RecordType {
+		SESSION,
+		START,
+		KEY_DOWN,
+		KEY_UP,
+		MOVE,
+		STICKY,
+		RESYNC
+	}
+	
+	private InputStream fileStream = null;
+	private RecordType mType = null;
+	private long mSessionStart = 0;
+	private int mDisplayWidth = 0;
+	private int mDisplayHeight = 0;
+	private int mPathStride = 0;
+	private long mTime = 0;
+	private boolean mStarted = false;
+	private int mLevel = 0;
+	private boolean mGenerated = false;
+	private long mSeed = 0;
+	private String mGenerator = "";
+	private int mVertexCount = 0;
+	private int mStickiness = 0;
+	private int mKeyCode = 0;
+	private Direction mDirection = Direction.NONE;
+	private int mSpeed = 0;
+	private int mDistance = 0;
+	private Orientation mOrientation = Orientation.NONE;
+	private int mResult = 0;
+	private int mV1 = 0;
+	private int mV2 = 0;
+	private int mX = 0;
+	private int mY = 0;
+	
+	public JournalReplayer(InputStream stream) throws IOException {
+		fileStream = new BufferedInputStream(stream, 1 << 16);
+		int magic = 0;
+		for (int i = 0; i < 4; i++) {
+			magic = (magic << 8) | readByte();
+		}
+		if (magic != PlayJournal.mMagic) {
+			throw new IOException("Not a play journal");
+		}
+		int version = readByte();
+		if (version != PlayJournal.mVersion) {
+			throw new IOException("Unsupported play journal version " + version);
+		}
+	}
+	
+	/*
+	 * Advance to the next record. Returns false at the end of the journal.
+	 */
+	public boolean next() throws IOException {
+		int tag = fileStream.read();
+		if (tag < 0) {
+			return false;
+		}
+		try {
+			readRecord(tag);
+		} catch (EOFException e) {
+			return false;
+		}
+		return true;
+	}
+	
+	/*
+	 * Fast forward to the last record at or before time in the current 
+	 * session, so that the getters describe the game at that time. Records
+	 * are only decoded, so this runs at the speed of reading the file. 
+	 * Stops before the next session. Returns false if the journal ended
+	 * before time.
+	 */
+	public boolean seek(long time) throws IOException {
+		while (true) {
+			// Peek at the type and time of the next record
+			fileStream.mark(PlayJournal.mMaxRecord);
+			int tag = fileStream.read();
+			if (tag < 0) {
+				return false;
+			}
+			boolean ahead;
+			try {
+				if ((tag & PlayJournal.mTypeMask) == PlayJournal.mSession) {
+					ahead = (mType != null);
+				}
+				else if ((tag & PlayJournal.mTypeMask) == PlayJournal.mResync) {
+					ahead = (readVarint() > time);
+				}
+				else {
+					ahead = (mTime + readVarint() > time);
+				}
+			} catch (EOFException e) {
+				return false;
+			}
+			fileStream.reset();
+			if (ahead) {
+				return true;
+			}
+			if (!next()) {
+				return false;
+			}
+		}
+	}
+	
+	/*
+	 * Apply the current record to maze: a START or RESYNC record puts the
+	 * bead where it was recorded, a STICKY record sets the bead vertex 
+	 * stickiness and a MOVE record moves the bead again. Returns false if the
+	 * move ends up somewhere other than recorded, i.e. the replay diverged.
+	 */
+	public boolean apply(Maze maze) {
+		if ((mType == RecordType.START) || (mType == RecordType.RESYNC)) {
+			if (mStarted) {
+				maze.setBeadVertexStickiness(mStickiness);
+				maze.getBead().move(mV1, mV2, mX, mY);
+			}
+			return true;
+		}
+		if (mType == RecordType.STICKY) {
+			maze.setBeadVertexStickiness(mStickiness);
+			return true;
+		}
+		if (mType != RecordType.MOVE) {
+			return true;
+		}
+		int result = maze.moveBead(mDistance, mOrientation);
+		Bead bead = maze.getBead();
+		return (result == mResult) && (bead.getVertexId1() == mV1) && (bead.getVertexId2() == mV2) &&
+		       (bead.getX() == mX) && (bead.getY() == mY);
+	}
+	
+	/*
+	 * Whether maze, built from config for the current START or RESYNC 
+	 * record as described above, is the maze that was recorded. If not the
+	 * journal was written with a different level schedule and replaying 
+	 * it would diverge.
+	 */
+	public boolean matches(LevelConfig config, Maze maze) {
+		if (!mStarted || (maze == null) || (maze.getVertexCount() != mVertexCount)) {
+			return false;
+		}
+		if (!mGenerated) {
+			return !maze.isGenerated();
+		}
+		return maze.isGenerated() && (maze.getSeed() == mSeed) && 
+		       mGenerator.equalsIgnoreCase(config.getGeneratorName(mLevel));
+	}
+	
+	public RecordType getType() {
+		return mType;
+	}
+	
+	/*
+	 * Wall clock time in milliseconds at which the current session began
+	 */
+	public long getSessionStart() {
+		return mSessionStart;
+	}
+	
+	/*
+	 * Display size and path stride the mazes of the current session were
+	 * built with, see AutoMazeBuilder
+	 */
+	public int getDisplayWidth() {
+		return mDisplayWidth;
+	}
+	
+	public int getDisplayHeight() {
+		return mDisplayHeight;
+	}
+	
+	public int getPathStride() {
+		return mPathStride;
+	}
+	
+	/*
+	 * Microseconds since the start of the current session
+	 */
+	public long getTime() {
+		return mTime;
+	}
+	
+	/*
+	 * Whether a START record, or a RESYNC record restating one, has been
+	 * read, i.e. whether the level and bead state are known
+	 */
+	public boolean isStarted() {
+		return mStarted;
+	}
+	
+	public int getLevel() {
+		return mLevel;
+	}
+	
+	/*
+	 * Whether the maze of the last START record was generated, i.e. can be
+	 * rebuilt with AutoMazeBuilder.setSeed(getSeed())
+	 */
+	public boolean isGenerated() {
+		return mGenerated;
+	}
+	
+	public long getSeed() {
+		return mSeed;
+	}
+	
+	/*
+	 * Generator the level configuration named for the level of the last 
+	 * START record, empty if the maze was not generated
+	 */
+	public String getGenerator() {
+		return mGenerator;
+	}
+	
+	public int getVertexCount() {
+		return mVertexCount;
+	}
+	
+	/*
+	 * Bead vertex stickiness in effect, see Maze.isBeadVirtexStickinessHigh()
+	 */
+	public int getStickiness() {
+		return mStickiness;
+	}
+	
+	public int getKeyCode() {
+		return mKeyCode;
+	}
+	
+	public Direction getDirection() {
+		return mDirection;
+	}
+	
+	public int getSpeed() {
+		return mSpeed;
+	}
+	
+	public int getDistance() {
+		return mDistance;
+	}
+	
+	public Orientation getOrientation() {
+		return mOrientation;
+	}
+	
+	public int getResult() {
+		return mResult;
+	}
+	
+	public int getBeadX() {
+		return mX;
+	}
+	
+	public int getBeadY() {
+		return mY;
+	}
+	
+	public int getBeadVertex1() {
+		return mV1;
+	}
+	
+	public int getBeadVertex2() {
+		return mV2;
+	}
+	
+	public void close() throws IOException {
+		fileStream.close();
+	}
+	
+	private void readRecord(int tag) throws IOException {
+		switch (tag & PlayJournal.mTypeMask) {
+		case PlayJournal.mSession:
+			mType = RecordType.SESSION;
+			readSession();
+			mTime = 0;
+			mStarted = false;
+			mV1 = 0;
+			mV2 = 0;
+			mX = 0;
+			mY = 0;
+			break;
+		case PlayJournal.mStart:
+			mType = RecordType.START;
+			mTime += readVarint();
+			readStart(tag);
+			break;
+		case PlayJournal.mKeyDown:
+		case PlayJournal.mKeyUp:
+			mType = ((tag & PlayJournal.mTypeMask) == PlayJournal.mKeyDown) ? RecordType.KEY_DOWN : RecordType.KEY_UP;
+			mTime += readVarint();
+			mKeyCode = (int)readVarint();
+			mDirection = Direction.values()[(int)readVarint()];
+			mSpeed = (int)unzigzag(readVarint());
+			break;
+		case PlayJournal.mMove:
+			mType = RecordType.MOVE;
+			mOrientation = Orientation.values()[(tag >> 3) & 0x3];
+			mResult = ((tag >> 5) & 0x3) - 1;
+			mTime += readVarint();
+			mDistance = (int)unzigzag(readVarint());
+			mX += (int)unzigzag(readVarint());
+			mY += (int)unzigzag(readVarint());
+			if ((tag & PlayJournal.mVerticesBit) != 0) {
+				mV1 += (int)unzigzag(readVarint());
+				mV2 += (int)unzigzag(readVarint());
+			}
+			break;
+		case PlayJournal.mSticky:
+			mType = RecordType.STICKY;
+			mTime += readVarint();
+			mStickiness = (int)readVarint();
+			break;
+		case PlayJournal.mResync:
+			mType = RecordType.RESYNC;
+			mTime = readVarint();
+			readSession();
+			mStarted = ((tag & PlayJournal.mStartedBit) != 0);
+			if (mStarted) {
+				readStart(tag);
+			}
+			break;
+		default:
+			throw new IOException("Unknown play journal record " + tag);
+		}
+	}
+	
+	private void readSession() throws IOException {
+		mSessionStart = readVarint();
+		mDisplayWidth = (int)readVarint();
+		mDisplayHeight = (int)readVarint();
+		mPathStride = (int)readVarint();
+	}
+	
+	private void readStart(int tag) throws IOException {
+		mStarted = true;
+		mLevel = (int)readVarint();
+		mGenerated = ((tag & PlayJournal.mGeneratedBit) != 0);
+		mSeed = readVarint();
+		long length = readVarint();
+		if (length > PlayJournal.mMaxName) {
+			throw new IOException("Malformed play journal generator name");
+		}
+		byte name[] = new byte[(int)length];
+		for (int i = 0; i < name.length; i++) {
+			name[i] = (byte)readByte();
+		}
+		mGenerator = new String(name, "UTF-8");
+		mVertexCount = (int)readVarint();
+		mStickiness = (int)readVarint();
+		mV1 = (int)readVarint();
+		mV2 = (int)readVarint();
+		mX = (int)unzigzag(readVarint());
+		mY = (int)unzigzag(readVarint());
+	}
+	
+	private static long unzigzag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+	
+	private int readByte() throws IOException {
+		int b = fileStream.read();
+		if (b < 0) {
+			throw new EOFException();
+		}
+		return b;
+	}
+	
+	private long readVarint() throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 70; shift += 7) {
+			int b = readByte();
+			value |= (long)(b & 0x7f) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Malformed varint");
+	}
+}
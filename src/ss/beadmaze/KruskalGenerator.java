@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2010, 2012, Sonal Santan < sonal DOT santan AT gmail DOT com >
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+
+package ss.beadmaze;
+
+import java.util.Random;
+
+import ss.beadmaze.Maze.Direction;
+
+/*
+ * Randomized Kruskal. Every inner wall is visited once in random order and
+ * removed if the cells on its two sides are not yet connected. Produces
+ * many short dead ends. Connectivity is tracked with a union-find over 
+ * plain int arrays (union by size, path halving).
+ */
+public class KruskalGenerator implements MazeGenerator {
+	private int mParent[] = null;
+	private int mSize[] = null;
+
+	public void generate(GridMaze grid, Random rand) {
+		int count = grid.getVertexCount();
+		mParent = new int[count];
+		mSize = new int[count];
+		for (int i = 0; i < count; i++) {
+			mParent[i] = i;
+			mSize[i] = 1;
+		}
+		
+		// Wall (2 * id) is EAST of cell id, wall (2 * id + 1) is SOUTH of it
+		int walls[] = new int[2 * count];
+		int wallCount = 0;
+		for (int id = 0; id < count; id++) {
+			if (grid.getAdjacent(id, Direction.EAST) >= 0) {
+				walls[wallCount++] = 2 * id;
+			}
+			if (grid.getAdjacent(id, Direction.SOUTH) >= 0) {
+				walls[wallCount++] = 2 * id + 1;
+			}
+		}
+		
+		// Visit the walls in random order; a partial Fisher-Yates shuffle
+		// drawn one wall at a time
+		int links = 0;
+		for (int i = 0; (i < wallCount) && (links < count - 1); i++) {
+			int j = i + rand.nextInt(wallCount - i);
+			int wall = walls[j];
+			walls[j] = walls[i];
+			walls[i] = wall;
+			
+			int id = wall / 2;
+			Direction dir = ((wall & 1) == 0) ? Direction.EAST : Direction.SOUTH;
+			if (union(id, grid.getAdjacent(id, dir))) {
+				grid.addLink(id, dir);
+				links++;
+			}
+		}
+		mParent = null;
+		mSize = null;
+	}
+	
+	private int find(int id) {
+		while (mParent[id] != id) {
+			mParent[id] = mParent[mParent[id]];
+			id = mParent[id];
+		}
+		return id;
+	}
+	
+	/*
+	 * Returns false if both cells are already in the same set
+	 */
+	private boolean union(int id1, int id2) {
+		int root1 = find(id1);
+		int root2 = find(id2);
+		if (root1 == root2) {
+			return false;
+		}
+		if (mSize[root1] < mSize[root2]) {
+			int swap = root1;
+			root1 = root2;
+			root2 = swap;
+		}
+		mParent[root2] = root1;
+		mSize[root1] += mSize[root2];
+		return true;
+	}
+}
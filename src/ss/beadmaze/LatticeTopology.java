@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2010, 2012, Sonal Santan < sonal DOT santan AT gmail DOT com >
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+
+
+package ss.beadmaze;
+
+/*
+ * A topology whose vertices lie on a regular lattice as laid out by 
+ * GridMaze: vertex row * getXCount() + column sits at the co-ordinates of
+ * that column and row. The vertices in an area are therefore found from
+ * the co-ordinates alone, without visiting or loading any others.
+ */
+public interface LatticeTopology extends MazeTopology {
+	public int getXCount();
+	
+	public int getYCount();
+	
+	/*
+	 * The column whose vertices lie closest to x
+	 */
+	public int getColumn(int x);
+	
+	/*
+	 * The row whose vertices lie closest to y
+	 */
+	public int getRow(int y);
+}
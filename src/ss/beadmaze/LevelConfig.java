@@ -0,0 +1,326 @@
+/*
+ * Copyright (c) 2010, 2012, Sonal Santan < sonal DOT santan AT gmail DOT com >
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+
+
+package ss.beadmaze;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/*
+ * The level schedule of levels.xml, parsed once and then shared by any 
+ * number of AutoMazeBuilders on any thread. Instances are immutable.
+ *
+ *   <levelstart count=/>            cells of level 0
+ *   <leveldelta count=/>            cells added per level
+ *   <generator name= [threads= tile=]/>
+ *   <endpoints mode="corner|diameter"/>
+ *   <difficulty candidates= threads= coverage= deadends= decisions= corridor=/>
+ *   <level number= [count=] [xcount= ycount=] [generator= threads= tile=] [seed=]/>
+ *
+ * A <level> element overrides the schedule for that one level: count sets
+ * its cell count, xcount and ycount its grid directly, generator its
+ * algorithm and seed makes it the very same maze on every build. threads
+ * and tile override those of <generator> each on their own, whether or 
+ * not the level also sets generator.
+ */
+public class LevelConfig {
+	private static final int mDefaultTileSize = 256;
+	
+	/*
+	 * Overrides of a single level, unset values are null
+	 */
+	public static class Level {
+		private final int mNumber;
+		private final Integer mCount;
+		private final Integer mXCount;
+		private final Integer mYCount;
+		private final String mGenerator;
+		private final Integer mThreads;
+		private final Integer mTile;
+		private final Long mSeed;
+		
+		private Level(int number, Integer count, Integer xCount, Integer yCount, 
+				     String generator, Integer threads, Integer tile, Long seed) {
+			mNumber = number;
+			mCount = count;
+			mXCount = xCount;
+			mYCount = yCount;
+			mGenerator = generator;
+			mThreads = threads;
+			mTile = tile;
+			mSeed = seed;
+		}
+		
+		public int getNumber() {
+			return mNumber;
+		}
+	}
+	
+	private final int mLevelStartCount;
+	private final int mLevelDeltaCount;
+	private final String mGeneratorName;
+	private final int mGeneratorThreads;
+	private final int mGeneratorTile;
+	private final boolean mDiameterEndpoints;
+	private final int mCandidateCount;
+	private final int mCandidateThreads;
+	private final DifficultyProfile mProfile;
+	private final Map<Integer, Level> mLevels;
+	
+	private LevelConfig(ConfigHandler h) {
+		mLevelStartCount = h.mLevelStartCount;
+		mLevelDeltaCount = h.mLevelDeltaCount;
+		mGeneratorName = h.mGeneratorName;
+		mGeneratorThreads = h.mGeneratorThreads;
+		mGeneratorTile = h.mGeneratorTile;
+		mDiameterEndpoints = h.mDiameterEndpoints;
+		mCandidateCount = h.mCandidateCount;
+		mCandidateThreads = h.mCandidateThreads;
+		mProfile = h.mProfile;
+		mLevels = Collections.unmodifiableMap(new HashMap<Integer, Level>(h.mLevels));
+	}
+	
+	public static LevelConfig parse(String xmlIn) {
+		FileInputStream f = null;
+		try {
+			f = new FileInputStream(xmlIn);
+		} catch (FileNotFoundException e) {
+			e.printStackTrace();
+			return null;
+		}
+		LevelConfig config = parse(f);
+		try {
+			f.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return config;
+	}
+	
+	/*
+	 * Returns null if stream is not a valid level configuration
+	 */
+	public static LevelConfig parse(InputStream stream) {
+		ConfigHandler handler = new ConfigHandler();
+		try {
+			SAXParserFactory.newInstance().newSAXParser().parse(stream, handler);
+		} catch (ParserConfigurationException e) {
+			e.printStackTrace();
+			return null;
+		} catch (SAXException e) {
+			e.printStackTrace();
+			return null;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		} catch (NumberFormatException e) {
+			e.printStackTrace();
+			return null;
+		}
+		return new LevelConfig(handler);
+	}
+	
+	/*
+	 * Target number of cells of level, -1 if its grid is given directly
+	 */
+	public int getCellCount(int level) {
+		Level l = mLevels.get(level);
+		if ((l != null) && (l.mXCount != null)) {
+			return -1;
+		}
+		if ((l != null) && (l.mCount != null)) {
+			return l.mCount;
+		}
+		return mLevelStartCount + level * mLevelDeltaCount;
+	}
+	
+	/*
+	 * Grid columns of level if overridden, otherwise 0
+	 */
+	public int getXCount(int level) {
+		Level l = mLevels.get(level);
+		return ((l != null) && (l.mXCount != null)) ? l.mXCount : 0;
+	}
+	
+	public int getYCount(int level) {
+		Level l = mLevels.get(level);
+		return ((l != null) && (l.mYCount != null)) ? l.mYCount : 0;
+	}
+	
+	public String getGeneratorName(int level) {
+		Level l = mLevels.get(level);
+		return ((l != null) && (l.mGenerator != null)) ? l.mGenerator : mGeneratorName;
+	}
+	
+	public int getGeneratorThreads(int level) {
+		Level l = mLevels.get(level);
+		return ((l != null) && (l.mThreads != null)) ? l.mThreads : mGeneratorThreads;
+	}
+	
+	public int getGeneratorTile(int level) {
+		Level l = mLevels.get(level);
+		return ((l != null) && (l.mTile != null)) ? l.mTile : mGeneratorTile;
+	}
+	
+	/*
+	 * The fixed seed of level or null if it is random
+	 */
+	public Long getSeed(int level) {
+		Level l = mLevels.get(level);
+		return (l != null) ? l.mSeed : null;
+	}
+	
+	public boolean getDiameterEndpoints() {
+		return mDiameterEndpoints;
+	}
+	
+	public int getCandidateCount() {
+		return mCandidateCount;
+	}
+	
+	public int getCandidateThreads() {
+		return mCandidateThreads;
+	}
+	
+	/*
+	 * Null unless a <difficulty> element is present
+	 */
+	public DifficultyProfile getProfile() {
+		return mProfile;
+	}
+	
+	private static class ConfigHandler extends DefaultHandler {
+		private int mLevelStartCount = 0;
+		private int mLevelDeltaCount = 0;
+		private String mGeneratorName = "backtracker";
+		private int mGeneratorThreads = 1;
+		private int mGeneratorTile = mDefaultTileSize;
+		private boolean mDiameterEndpoints = false;
+		private int mCandidateCount = 1;
+		private int mCandidateThreads = 1;
+		private DifficultyProfile mProfile = null;
+		private final Map<Integer, Level> mLevels = new HashMap<Integer, Level>();
+		
+		public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+			String name = (qName.length() != 0) ? qName : localName;
+			if (name.equalsIgnoreCase("levelstart")) {
+				mLevelStartCount = decodeInteger(attributes, "count", 0);
+			}
+			else if (name.equalsIgnoreCase("leveldelta")) {
+				mLevelDeltaCount = decodeInteger(attributes, "count", 0);
+			}
+			else if (name.equalsIgnoreCase("generator")) {
+				mGeneratorName = decodeGenerator(attributes.getValue("name"));
+				// Optional parallel mode: threads="N" [tile="cells"]
+				mGeneratorThreads = decodeInteger(attributes, "threads", 1);
+				mGeneratorTile = decodeInteger(attributes, "tile", mDefaultTileSize);
+			}
+			else if (name.equalsIgnoreCase("endpoints")) {
+				String mode = attributes.getValue("mode");
+				if ((mode != null) && mode.trim().equalsIgnoreCase("diameter")) {
+					mDiameterEndpoints = true;
+				}
+				else if ((mode != null) && mode.trim().equalsIgnoreCase("corner")) {
+					mDiameterEndpoints = false;
+				}
+				else {
+					throw new SAXException("Invalid endpoints mode " + mode);
+				}
+			}
+			else if (name.equalsIgnoreCase("difficulty")) {
+				mCandidateCount = Math.max(decodeInteger(attributes, "candidates", 1), 1);
+				mCandidateThreads = Math.max(decodeInteger(attributes, "threads", 1), 1);
+				mProfile = new DifficultyProfile(decodeDouble(attributes, "coverage"), decodeDouble(attributes, "deadends"),
+				                                 decodeDouble(attributes, "decisions"), decodeDouble(attributes, "corridor"));
+			}
+			else if (name.equalsIgnoreCase("level")) {
+				processLevel(attributes);
+			}
+		}
+		
+		private void processLevel(Attributes attributes) throws SAXException {
+			Integer number = decodeInteger(attributes, "number");
+			if ((number == null) || (number < 0) || mLevels.containsKey(number)) {
+				throw new SAXException("Invalid level number " + number);
+			}
+			Integer xCount = decodeInteger(attributes, "xcount");
+			Integer yCount = decodeInteger(attributes, "ycount");
+			if ((xCount == null) != (yCount == null)) {
+				throw new SAXException("Level " + number + " needs both xcount and ycount");
+			}
+			// GridMaze spreads the lattice over the screen which needs two points per axis
+			if ((xCount != null) && ((xCount < 2) || (yCount < 2))) {
+				throw new SAXException("Level " + number + " grid too small");
+			}
+			String generator = attributes.getValue("generator");
+			if (generator != null) {
+				generator = decodeGenerator(generator);
+			}
+			String seed = attributes.getValue("seed");
+			mLevels.put(number, new Level(number, decodeInteger(attributes, "count"), xCount, yCount, generator,
+					                      decodeInteger(attributes, "threads"), decodeInteger(attributes, "tile"),
+					                      (seed != null) ? Long.valueOf(seed.trim()) : null));
+		}
+		
+		private static String decodeGenerator(String name) throws SAXException {
+			if ((name == null) || (AutoMazeBuilder.createGenerator(name.trim()) == null)) {
+				throw new SAXException("Unknown generator " + name);
+			}
+			return name.trim();
+		}
+		
+		private static Integer decodeInteger(Attributes attributes, String name) {
+			String str = attributes.getValue(name);
+			if ((str == null) || (str.trim().length() == 0)) {
+				return null;
+			}
+			return Integer.valueOf(str.trim());
+		}
+		
+		private static int decodeInteger(Attributes attributes, String name, int defaultValue) {
+			Integer value = decodeInteger(attributes, name);
+			return (value != null) ? value : defaultValue;
+		}
+		
+		/*
+		 * Returns 0, i.e. no target, if the attribute is missing
+		 */
+		private static double decodeDouble(Attributes attributes, String name) {
+			String str = attributes.getValue(name);
+			if ((str == null) || (str.trim().length() == 0)) {
+				return 0;
+			}
+			return Double.parseDouble(str.trim());
+		}
+	}
+}
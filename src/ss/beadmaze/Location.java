@@ -80,25 +80,29 @@ public class Location {
 		
 	}
 	
+	public void moveTo(int xx, int yy) {
+		x = xx;
+		y = yy;
+	}
+	
 	public Direction getDirection(Location target) {
-		if ((target.getX() > getX()) && 
-			(target.getY() == getY())) {
+		return getDirection(x, y, target.x, target.y);
+	}
+	
+	public static Direction getDirection(int x0, int y0, int x1, int y1) {
+		if ((x1 > x0) && (y1 == y0)) {
 			return Direction.EAST;
 		}
-		else if ((target.getX() < getX()) &&
-				 (target.getY() == getY())) {
+		else if ((x1 < x0) && (y1 == y0)) {
 			return Direction.WEST;
 		}
-		else if ((target.getY() < getY()) &&
-				 (target.getX() == getX())) {
+		else if ((y1 < y0) && (x1 == x0)) {
 			return Direction.NORTH;
 		}
-		else if ((target.getY() > getY()) &&
-				 (target.getX() == getX())) {
+		else if ((y1 > y0) && (x1 == x0)) {
 			return Direction.SOUTH;
 		}
-		else if ((target.getY() == getY()) &&
-				 (target.getX() == getX())) {
+		else if ((y1 == y0) && (x1 == x0)) {
 			return Direction.NONE;	
 		}
 		else {
@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2010, 2012, Sonal Santan < sonal DOT santan AT gmail DOT com >
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+
+
+package ss.beadmaze;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/*
+ * A maze saved in a fixed layout which is used in place through a memory
+ * mapping. A fixed size header with the maze state is followed by the
+ * BufferTopology layout, so loading reads just the header and every other
+ * page is only faulted in when the game touches it:
+ *
+ *   header: magic, version, width, height, start, end, 
+ *           bead v1, bead v2, bead x, bead y, reserved, reserved (12 ints)
+ *   BufferTopology
+ *
+ * All values are little endian. Files are written to a temporary file and
+ * renamed into place, so a maze still mapped from an older save of the
+ * same name stays intact.
+ *
+ * Within a level only the bead moves, so after the first write() later
+ * saves of the same maze just overwrite the bead fields of the header, the
+ * state record, with writeState(). The topology part is never rewritten.
+ */
+public class MappedMazeFile {
+	private static final int mMagic = 0x4d5a4d42; // "BMZM"
+	private static final int mVersion = 1;
+	private static final int mHeaderSize = 12 * 4;
+	private static final int mStateOffset = 6 * 4;
+	private static final int mStateSize = 4 * 4;
+	
+	public static boolean write(Maze maze, String file) {
+		MazeTopology edge = maze.getTopology();
+		Bead bead = maze.getBead();
+		int count = edge.getVertexCount();
+		long size = mHeaderSize + BufferTopology.getSize(count);
+		if (size > Integer.MAX_VALUE) {
+			return false;
+		}
+		File target = new File(file);
+		File temp = new File(file + ".tmp");
+		try {
+			RandomAccessFile f = new RandomAccessFile(temp, "rw");
+			try {
+				f.setLength(size);
+				MappedByteBuffer buffer = f.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+				buffer.order(ByteOrder.LITTLE_ENDIAN);
+				buffer.putInt(0, mMagic);
+				buffer.putInt(4, mVersion);
+				buffer.putInt(8, maze.getWidth());
+				buffer.putInt(12, maze.getHeight());
+				buffer.putInt(16, maze.getStartVertex().getIndex());
+				buffer.putInt(20, maze.getEndVertex().getIndex());
+				buffer.putInt(24, bead.getVertexId1());
+				buffer.putInt(28, bead.getVertexId2());
+				buffer.putInt(32, bead.getX());
+				buffer.putInt(36, bead.getY());
+				buffer.putInt(40, 0);
+				buffer.putInt(44, 0);
+				BufferTopology topology = BufferTopology.create(slice(buffer), count);
+				topology.copyFrom(edge);
+				buffer.force();
+			}
+			finally {
+				f.close();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			temp.delete();
+			return false;
+		}
+		return temp.renameTo(target);
+	}
+	
+	/*
+	 * Update the bead state of a file previously written for maze in place.
+	 * Takes the same time whatever the maze size. Returns false if file 
+	 * does not hold this maze, in which case write() has to be used.
+	 */
+	public static boolean writeState(Maze maze, String file) {
+		Bead bead = maze.getBead();
+		try {
+			RandomAccessFile f = new RandomAccessFile(file, "rw");
+			try {
+				FileChannel channel = f.getChannel();
+				ByteBuffer header = ByteBuffer.allocate(mHeaderSize + 3 * 4);
+				header.order(ByteOrder.LITTLE_ENDIAN);
+				while (header.hasRemaining()) {
+					if (channel.read(header, header.position()) < 0) {
+						return false;
+					}
+				}
+				// Check that the topology behind the header is the one of maze
+				if ((header.getInt(0) != mMagic) || (header.getInt(4) != mVersion) || 
+					(header.getInt(8) != maze.getWidth()) || (header.getInt(12) != maze.getHeight()) ||
+					(header.getInt(16) != maze.getStartVertex().getIndex()) || 
+					(header.getInt(20) != maze.getEndVertex().getIndex()) ||
+					(header.getInt(mHeaderSize + 8) != maze.getVertexCount())) {
+					return false;
+				}
+				ByteBuffer state = ByteBuffer.allocate(mStateSize);
+				state.order(ByteOrder.LITTLE_ENDIAN);
+				state.putInt(0, bead.getVertexId1());
+				state.putInt(4, bead.getVertexId2());
+				state.putInt(8, bead.getX());
+				state.putInt(12, bead.getY());
+				while (state.hasRemaining()) {
+					channel.write(state, mStateOffset + state.position());
+				}
+			}
+			finally {
+				f.close();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+		return true;
+	}
+	
+	/*
+	 * Map file and build a Maze directly on top of it. If w and h are
+	 * positive and differ from the saved dimensions the co-ordinates are 
+	 * scaled on access. Returns null if the file does not hold a maze.
+	 */
+	public static Maze load(String file, int w, int h, int p) {
+		ByteBuffer buffer = null;
+		try {
+			RandomAccessFile f = new RandomAccessFile(file, "r");
+			try {
+				// A single buffer is indexed by int
+				if ((f.length() < mHeaderSize) || (f.length() > Integer.MAX_VALUE)) {
+					return null;
+				}
+				buffer = f.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, f.length());
+			}
+			finally {
+				f.close();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		if ((buffer.capacity() < mHeaderSize) || (buffer.getInt(0) != mMagic) || (buffer.getInt(4) != mVersion)) {
+			return null;
+		}
+		int width = buffer.getInt(8);
+		int height = buffer.getInt(12);
+		int start = buffer.getInt(16);
+		int end = buffer.getInt(20);
+		int beadV1 = buffer.getInt(24);
+		int beadV2 = buffer.getInt(28);
+		int beadX = buffer.getInt(32);
+		int beadY = buffer.getInt(36);
+		
+		MazeTopology topology = BufferTopology.open(slice(buffer));
+		if ((topology == null) || (width <= 0) || (height <= 0)) {
+			return null;
+		}
+		int count = topology.getVertexCount();
+		if ((start < 0) || (start >= count) || (end < 0) || (end >= count) ||
+			(beadV1 < 0) || (beadV1 >= count) || (beadV2 < 0) || (beadV2 >= count)) {
+			return null;
+		}
+		if ((w > 0) && (h > 0) && ((w != width) || (h != height))) {
+			topology = new ScaledTopology(topology, width, height, w, h);
+			beadX = (int)(((long)beadX * w) / width);
+			beadY = (int)(((long)beadY * h) / height);
+			width = w;
+			height = h;
+		}
+		Bead bead = new Bead(topology, topology.getVertex(beadV1), topology.getVertex(beadV2), new Location(beadX, beadY), 10);
+		return new Maze(bead, topology, topology.getVertex(start), topology.getVertex(end), height, width, p / 2);
+	}
+	
+	/*
+	 * The topology part of buffer, indexed from 0
+	 */
+	private static ByteBuffer slice(ByteBuffer buffer) {
+		buffer.position(mHeaderSize);
+		ByteBuffer topology = buffer.slice();
+		buffer.position(0);
+		return topology;
+	}
+}
@@ -21,6 +21,8 @@
 package ss.beadmaze;
 
 import java.io.FileOutputStream;
+import java.util.Arrays;
+
 import android.os.Bundle;
 
 public class Maze {
@@ -41,17 +43,27 @@ public class Maze {
 	}
 	
 	private Bead bead;
-	private Edge edge;
+	private MazeTopology edge;
 	private Vertex endVertex;
 	private Vertex startVertex;
 	private int height;
 	private int width;
 	private int beadVertexStickiness = 5;
+	private SpatialIndex spatialIndex = null;
+	private ContractedGraph contractedGraph = null;
 	
 	private String beadVertex1 = "beadVertex1";
 	private String beadVertex2 = "beadVertex2";
 	private String beadLocX = "beadLocX";
 	private String beadLocY = "beadLocY";
+	/** Bundle keys under which a generated maze records how to rebuild it */
+	public static final String mazeSeedKey = "mazeSeed";
+	public static final String mazeLevelKey = "mazeLevel";
+	
+	// Level and seed this maze was generated from. generatedLevel is -1 if
+	// the maze was not generated, e.g. loaded from a file
+	private int generatedLevel = -1;
+	private long seed = 0;
 	
 	/*
 	 * Utility function 
@@ -79,7 +91,7 @@ public class Maze {
 	 * Call this when the Bead is at the start location. Get the start
 	 * location from the bead itself
 	 */
-	public Maze(Bead b, Edge e, Vertex ev, int h, int w, int stickiness) {
+	public Maze(Bead b, MazeTopology e, Vertex ev, int h, int w, int stickiness) {
 		bead = b;
 		edge = e;
 		startVertex = bead.getVertex1();
@@ -92,7 +104,7 @@ public class Maze {
 	/*
 	 * Call this when the Bead is at some random location. 
 	 */
-	public Maze(Bead b, Edge e, Vertex sv, Vertex ev, int h, int w, int stickiness) {
+	public Maze(Bead b, MazeTopology e, Vertex sv, Vertex ev, int h, int w, int stickiness) {
 		bead = b;
 		edge = e;
 		startVertex = sv;
@@ -102,11 +114,22 @@ public class Maze {
 		beadVertexStickiness = stickiness;
 	}
 	
-	public Location getBeadLocation() {
-		return bead.getCurrentLocation();
+	public int getBeadX() {
+		return bead.getX();
+	}
+	
+	public int getBeadY() {
+		return bead.getY();
 	}
 	
-	Edge getEdge() {
+	/*
+	 * Copy the bead location into the caller provided loc
+	 */
+	public void getBeadLocation(Location loc) {
+		bead.getCurrentLocation(loc);
+	}
+	
+	MazeTopology getTopology() {
 		return edge;
 	}
 	
@@ -127,17 +150,17 @@ public class Maze {
             if (result == 0)
                 return 0;
             
-            if (bead.getVertex1() != bead.getVertex2())
+            if (bead.getVertexId1() != bead.getVertexId2())
                 return 1;
             
-            if (bead.getVertex1() != endVertex) 
+            if (bead.getVertexId1() != endVertex.getIndex()) 
                 return 1;
             // Reached end
 			return -1;
 	}
 
 	public void resetBead() { 
-        bead.move(startVertex);
+        bead.move(startVertex.getIndex());
 	}
 	
 	public int getHeight() {
@@ -159,28 +182,261 @@ public class Maze {
 	public Vertex findVertex(Vertex node, Direction dir) {
 		return edge.findVertex(node, dir);		
 	}
+	
+	/*
+	 * Primitive accessors for full maze scans. Unlike getVertex() and
+	 * findVertex() these never allocate.
+	 */
+	public int getVertexX(int id) {
+		return edge.getX(id);
+	}
+	
+	public int getVertexY(int id) {
+		return edge.getY(id);
+	}
+	
+	public int getNeighbor(int id, Direction dir) {
+		return edge.getNeighbor(id, dir);
+	}
 
+	void setOrigin(int level, long s) {
+		generatedLevel = level;
+		seed = s;
+	}
+	
+	public boolean isGenerated() {
+		return (generatedLevel >= 0);
+	}
+	
+	public long getSeed() {
+		return seed;
+	}
+	
+	/*
+	 * Save the bead state and, for a generated maze, the level and seed it 
+	 * can be rebuilt from. Returns false if the maze is not generated, in
+	 * which case the maze itself has to be saved with the other saveState().
+	 */
+	public boolean saveState(Bundle stateBundle) {
+		stateBundle.putInt(beadVertex1, bead.getVertexId1());
+		stateBundle.putInt(beadVertex2, bead.getVertexId2());
+		stateBundle.putInt(beadLocX, bead.getX());
+		stateBundle.putInt(beadLocY, bead.getY());
+		if (!isGenerated()) {
+			return false;
+		}
+		stateBundle.putInt(mazeLevelKey, generatedLevel);
+		stateBundle.putLong(mazeSeedKey, seed);
+		return true;
+	}
+	
+	/*
+	 * The maze is written in the binary format unless it can not be 
+	 * represented there, then as XML. Load with BinaryMazeBuilder or
+	 * MazeBuilder after checking BinaryMazeBuilder.isBinary().
+	 */
 	public boolean saveState(Bundle stateBundle, FileOutputStream fileStream) {
-		stateBundle.putInt(beadVertex1, bead.getVertex1().getIndex());
-		stateBundle.putInt(beadVertex2, bead.getVertex2().getIndex());
-		stateBundle.putInt(beadLocX, bead.getCurrentLocation().getX());
-		stateBundle.putInt(beadLocY, bead.getCurrentLocation().getY());
+		saveState(stateBundle);
+		return saveMaze(fileStream);
+	}
+	
+	/*
+	 * Write only the maze, as described for saveState() above. Returns
+	 * false if writing fails; the file is then incomplete and should be
+	 * discarded.
+	 */
+	public boolean saveMaze(FileOutputStream fileStream) {
+		BinaryView bv = new BinaryView(this);
+		if (bv.canEncode()) {
+			return bv.print(fileStream);
+		}
 		XMLView xv = new XMLView(this);
 		return xv.print(fileStream);
 	}
 	
+	/*
+	 * Copy of this maze with the bead frozen where it is now. The topology 
+	 * never changes and is shared, so this takes constant time and the copy
+	 * can be written out on another thread while the game goes on.
+	 */
+	public Maze snapshot() {
+		Bead b = new Bead(edge, edge.getVertex(bead.getVertexId1()), edge.getVertex(bead.getVertexId2()), 
+				          new Location(bead.getX(), bead.getY()), 10);
+		Maze copy = new Maze(b, edge, startVertex, endVertex, height, width, beadVertexStickiness);
+		copy.generatedLevel = generatedLevel;
+		copy.seed = seed;
+		return copy;
+	}
+	
 	public void restoreState(Bundle stateBundle) {
 		int verId1 = stateBundle.getInt(beadVertex1);
 		int verId2 = stateBundle.getInt(beadVertex2);
 		int locX = stateBundle.getInt(beadLocX);
 		int locY = stateBundle.getInt(beadLocY);
-		bead.move(getVertex(verId1), getVertex(verId2), new Location(locX, locY));
+		if (SpatialIndex.contains(edge, verId1, verId2, locX, locY)) {
+			bead.move(verId1, verId2, locX, locY);
+			return;
+		}
+		// The bundle does not match this maze, put the bead back on the maze
+		// at the junction or link closest to the saved location
+		int link[] = new int[2];
+		int nearest = findNearestVertex(locX, locY);
+		if ((nearest >= 0) && (edge.getX(nearest) == locX) && (edge.getY(nearest) == locY)) {
+			bead.move(nearest);
+		}
+		else if (findLink(locX, locY, nearest, link)) {
+			bead.move(link[0], link[1], locX, locY);
+		}
+		else if (nearest >= 0) {
+			bead.move(nearest);
+		}
+		else {
+			resetBead();
+		}
+	}
+	
+	/*
+	 * A lattice answers from the co-ordinates alone, which unlike the 
+	 * spatial index does not read every region of a lazily loaded maze
+	 */
+	private int findNearestVertex(int x, int y) {
+		if (edge instanceof LatticeTopology) {
+			LatticeTopology lattice = (LatticeTopology)edge;
+			return lattice.getRow(y) * lattice.getXCount() + lattice.getColumn(x);
+		}
+		return getSpatialIndex().findNearestVertex(x, y);
+	}
+	
+	/*
+	 * Find the link (x, y) lies on, WEST or NORTH end first as with
+	 * SpatialIndex.findLink(). On a lattice such a link ends at the nearest
+	 * vertex.
+	 */
+	private boolean findLink(int x, int y, int nearest, int link[]) {
+		if (!(edge instanceof LatticeTopology)) {
+			return getSpatialIndex().findLink(x, y, 0, link);
+		}
+		if (nearest < 0) {
+			return false;
+		}
+		int east = edge.getNeighbor(nearest, Direction.EAST);
+		int south = edge.getNeighbor(nearest, Direction.SOUTH);
+		int west = edge.getNeighbor(nearest, Direction.WEST);
+		int north = edge.getNeighbor(nearest, Direction.NORTH);
+		if ((east >= 0) && SpatialIndex.contains(edge, nearest, east, x, y)) {
+			link[0] = nearest;
+			link[1] = east;
+		}
+		else if ((south >= 0) && SpatialIndex.contains(edge, nearest, south, x, y)) {
+			link[0] = nearest;
+			link[1] = south;
+		}
+		else if ((west >= 0) && SpatialIndex.contains(edge, west, nearest, x, y)) {
+			link[0] = west;
+			link[1] = nearest;
+		}
+		else if ((north >= 0) && SpatialIndex.contains(edge, north, nearest, x, y)) {
+			link[0] = north;
+			link[1] = nearest;
+		}
+		else {
+			return false;
+		}
+		return true;
+	}
+	
+	/*
+	 * Ids of the vertices a picture of [x0, x1] x [y0, y1] has to show: at
+	 * least those inside it and those whose EAST or SOUTH link crosses it.
+	 * On a lattice only the columns and rows around the area are visited,
+	 * so a lazily loaded maze reads just the regions under it when their 
+	 * links are drawn.
+	 */
+	public int[] getVerticesNear(int x0, int y0, int x1, int y1) {
+		if (edge instanceof LatticeTopology) {
+			LatticeTopology lattice = (LatticeTopology)edge;
+			// One more column and row on every side for the links entering
+			// from outside
+			int c0 = Math.max(lattice.getColumn(x0) - 1, 0);
+			int c1 = Math.min(lattice.getColumn(x1) + 1, lattice.getXCount() - 1);
+			int r0 = Math.max(lattice.getRow(y0) - 1, 0);
+			int r1 = Math.min(lattice.getRow(y1) + 1, lattice.getYCount() - 1);
+			int ids[] = new int[(c1 - c0 + 1) * (r1 - r0 + 1)];
+			int count = 0;
+			for (int r = r0; r <= r1; r++) {
+				for (int c = c0; c <= c1; c++) {
+					ids[count++] = r * lattice.getXCount() + c;
+				}
+			}
+			return ids;
+		}
+		int vertexCount = edge.getVertexCount();
+		int ids[] = new int[vertexCount];
+		int count = 0;
+		for (int i = 0; i < vertexCount; i++) {
+			int x = edge.getX(i);
+			int y = edge.getY(i);
+			int xe = x, ye = y;
+			int east = edge.getNeighbor(i, Direction.EAST);
+			if (east >= 0) {
+				xe = edge.getX(east);
+			}
+			int south = edge.getNeighbor(i, Direction.SOUTH);
+			if (south >= 0) {
+				ye = edge.getY(south);
+			}
+			if ((xe >= x0) && (x <= x1) && (ye >= y0) && (y <= y1)) {
+				ids[count++] = i;
+			}
+		}
+		return Arrays.copyOf(ids, count);
+	}
+	
+	/*
+	 * Release the file a maze opened with RegionMazeFile.open() reads its
+	 * regions from. Other mazes hold no resources.
+	 */
+	public void close() {
+		if (edge instanceof RegionTopology) {
+			((RegionTopology)edge).close();
+		}
+	}
+	
+	/*
+	 * The index is built on first use and then cached since the topology of
+	 * a maze never changes
+	 */
+	public SpatialIndex getSpatialIndex() {
+		if (spatialIndex == null) {
+			spatialIndex = new SpatialIndex(edge);
+		}
+		return spatialIndex;
+	}
+	
+	/*
+	 * Corridor contracted view of the maze with the start and end vertices
+	 * always kept as nodes. Built on first use and then cached.
+	 */
+	public ContractedGraph getContractedGraph() {
+		if (contractedGraph == null) {
+			int pinned[] = {startVertex.getIndex(), endVertex.getIndex()};
+			contractedGraph = new ContractedGraph(edge, pinned);
+		}
+		return contractedGraph;
 	}
 	
 	public boolean isBeadVirtexStickinessHigh() {
 		return (beadVertexStickiness == 5);
 	}
 	
+	int getBeadVertexStickiness() {
+		return beadVertexStickiness;
+	}
+	
+	void setBeadVertexStickiness(int stickiness) {
+		beadVertexStickiness = stickiness;
+	}
+	
 	public void toggleBeadVirtexStickiness() {
 		if (beadVertexStickiness == 5) {
 			beadVertexStickiness = 1;
@@ -17,53 +17,55 @@
  *
  */
 
+
+
 package ss.beadmaze;
 
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.EnumSet;
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
+import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
 
 import ss.beadmaze.Maze.Direction;
 
+/*
+ * Loads a maze saved by XMLView. The document is streamed through a SAX 
+ * parser and every <vertex> is written straight into an Edge sized from 
+ * the vertexcount of <maze>, so nothing but the topology itself is kept
+ * in memory. Links are taken from the direction named attributes and 
+ * numbers are parsed in place without creating intermediate strings.
+ */
 public class MazeBuilder {
+	private static final Direction mDirections[] = {Direction.EAST, Direction.WEST, Direction.NORTH, Direction.SOUTH};
 	private int gameStart = 0;
 	private int gameEnd = 0;
-	private Document doc = null;
 	private int height = 0;
 	private int width = 0;
 	private int mPathWidth = 0;
 	private int xmlHeight = 0;
 	private int xmlWidth = 0;
+	// Dimensions of the loaded maze, those of the screen or the saved ones
+	private int mazeHeight = 0;
+	private int mazeWidth = 0;
+	private Edge edge = null;
+	private int beadV1 = -1;
+	private int beadV2 = -1;
+	private int beadX = 0;
+	private int beadY = 0;
+	// Scratch for the two values of a loc attribute
+	private final int mLoc[] = new int[2];
 	
-	private class VertexContainer {
-		Vertex vertex;
-		List<Integer> edges;
-		public VertexContainer(Vertex ver) {
-			vertex = ver;
-			edges = new LinkedList<Integer>();
-		}
-	}
-	
-	private VertexContainer junctions[] = null;
-	private Integer beadV1;
-	private Integer beadV2;
-	private Location beadLoc;
-	
+	/*
+	 * A width or height which is not positive keeps the saved dimensions
+	 */
 	public MazeBuilder(int w, int h, int p) {
 		width = w;
 		height = h;
@@ -83,11 +85,9 @@ public class MazeBuilder {
 	}
 	
 	public Maze build(InputStream stream) {
-		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-		DocumentBuilder builder = null;
 		try {
-			builder = factory.newDocumentBuilder();
-			doc = builder.parse(stream);
+			SAXParser parser = SAXParserFactory.newInstance().newSAXParser();
+			parser.parse(stream, new MazeHandler());
 		} catch (ParserConfigurationException e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
@@ -102,130 +102,180 @@ public class MazeBuilder {
 			e.printStackTrace();
 			return null;
 		}
-		if (!traverseXML(doc)) {
+		
+		if ((edge == null) || (xmlHeight <= 0) || (xmlWidth <= 0)) {
 			return null;
 		}
-		
-		if ((xmlHeight <= 0) || (xmlWidth <= 0)) {
+		int count = edge.getVertexCount();
+		if ((beadV1 < 0) || (beadV1 >= count) || (beadV2 < 0) || (beadV2 >= count) ||
+			(gameStart < 0) || (gameStart >= count) || (gameEnd < 0) || (gameEnd >= count)) {
 			return null;
 		}
 		
-		Vertex arr[] = new Vertex[junctions.length];
-		for (int i=0; i<arr.length; i++) {
-			arr[i] = junctions[i].vertex;
+		Bead bead = new Bead(edge, edge.getVertex(beadV1), edge.getVertex(beadV2), new Location(beadX, beadY), 10);
+		return new Maze(bead, edge, edge.getVertex(gameStart), edge.getVertex(gameEnd), 
+				        mazeHeight, mazeWidth, mPathWidth / 2); 
+	}
+	
+	private class MazeHandler extends DefaultHandler {
+		private boolean mSeen[] = null;
+		
+		public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+			String name = (qName.length() != 0) ? qName : localName;
+			if (name.equalsIgnoreCase("maze")) {
+				processMaze(attributes);
+			}
+			else if (name.equalsIgnoreCase("bead")) {
+				processBead(attributes);
+			}  
+			else if (name.equalsIgnoreCase("vertex")) {
+				processVertex(attributes);
+			}      
+		}
+		
+		private void processMaze(Attributes attributes) throws SAXException {
+			int count = decodeInteger(attributes, "vertexcount");
+			if (count < 0) {
+				throw new SAXException("Invalid vertexcount");
+			}
+			edge = new Edge(count);
+			mSeen = new boolean[count];
+			xmlHeight = decodeInteger(attributes, "height");
+			xmlWidth = decodeInteger(attributes, "width");
+			gameStart = decodeInteger(attributes, "start");
+			gameEnd = decodeInteger(attributes, "end");
+			boolean keep = (width <= 0) || (height <= 0);
+			mazeWidth = keep ? xmlWidth : width;
+			mazeHeight = keep ? xmlHeight : height;
 		}
 		
-		Edge edge = new Edge(arr);
-		for (int i=0; i<arr.length; i++) {
-			for (Iterator<Integer> j = junctions[i].edges.iterator(); j.hasNext();) { 
-				Vertex ver = junctions[j.next()].vertex;
-				edge.addLinks(junctions[i].vertex, ver);
-			}	
-		}
-		Bead bead = new Bead(edge, junctions[beadV1].vertex, junctions[beadV2].vertex, beadLoc, 10);
-		return new Maze(bead, edge, junctions[gameStart].vertex, junctions[gameEnd].vertex, 
-				        height, width, mPathWidth / 2); 
+		private void processBead(Attributes attributes) throws SAXException {
+			beadV1 = decodeInteger(attributes, "v1");
+			beadV2 = decodeInteger(attributes, "v2");
+			decodeLocation(attributes);
+			beadX = mLoc[0];
+			beadY = mLoc[1];
+		}
+		
+		private void processVertex(Attributes attributes) throws SAXException {
+			if (edge == null) {
+				throw new SAXException("<vertex> outside of <maze>");
+			}
+			int count = edge.getVertexCount();
+			int id = -1;
+			// Walk the attributes once instead of looking up each name
+			for (int i = 0; i < attributes.getLength(); i++) {
+				String name = attributes.getQName(i);
+				if (name.length() == 0) {
+					name = attributes.getLocalName(i);
+				}
+				if (name.equalsIgnoreCase("id")) {
+					id = parseInteger(attributes.getValue(i), 0);
+					if ((id < 0) || (id >= count) || mSeen[id]) {
+						throw new SAXException("Invalid vertex id " + id);
+					}
+					mSeen[id] = true;
+				}
+			}
+			if (id < 0) {
+				throw new SAXException("Vertex without id");
+			}
+			for (int i = 0; i < attributes.getLength(); i++) {
+				String name = attributes.getQName(i);
+				if (name.length() == 0) {
+					name = attributes.getLocalName(i);
+				}
+				if (name.equalsIgnoreCase("loc")) {
+					parseLocation(attributes.getValue(i));
+					edge.setLocation(id, mLoc[0], mLoc[1]);
+					continue;
+				}
+				for (Direction dir : mDirections) {
+					if (name.equalsIgnoreCase(dir.toString())) {
+						int v = parseInteger(attributes.getValue(i), 0);
+						if ((v < 0) || (v >= count)) {
+							throw new SAXException("Invalid link " + id + " " + dir + " " + v);
+						}
+						edge.addLinks(id, dir, v);
+						break;
+					}
+				}
+			}
+		}
 	}
 	
-	private boolean traverseXML(Node node) {
-		boolean result = true;
-	    switch (node.getNodeType()) {
-	    case Node.DOCUMENT_NODE:
-	    case Node.TEXT_NODE:
-        case Node.COMMENT_NODE:
-	    	break;
-        case Node.ELEMENT_NODE:
-            result = processElement((Element)node);
-            break;
-        case Node.ATTRIBUTE_NODE:
-        case Node.CDATA_SECTION_NODE:
-        case Node.DOCUMENT_FRAGMENT_NODE:
-        case Node.DOCUMENT_TYPE_NODE:
-        case Node.ENTITY_NODE:
-        case Node.ENTITY_REFERENCE_NODE:
-        case Node.NOTATION_NODE:
-        case Node.PROCESSING_INSTRUCTION_NODE:
-        default:
-            assert (false) : node.toString();
-            result = false;
-        	break;            
-        }
-        if (!result) {
-        	return false;
-        }
-        
-        NodeList clist = node.getChildNodes();
-        for (int i=0; i<clist.getLength(); i++)
-        {
-			result = result && traverseXML(clist.item(i));
-        }
-		return result;
+	/*
+	 * Returns -1 if the attribute is missing
+	 */
+	private static int decodeInteger(Attributes attributes, String name) throws SAXException {
+		String str = attributes.getValue(name);
+		if ((str == null) || (str.length() == 0)) {
+			return -1;
+		}
+		return parseInteger(str, 0);
 	}
 	
-    private boolean processElement(Element n) {
-    	boolean result = true;
-    	if (n.getNodeName().equalsIgnoreCase("maze")) {
-    		int count = decodeInteger(n, "vertexcount");
-    		junctions = new VertexContainer[count];
-    		xmlHeight = decodeInteger(n, "height");
-    		xmlWidth = decodeInteger(n, "width");
-    		gameStart = decodeInteger(n, "start");
-    		gameEnd = decodeInteger(n, "end");
-        }
-        else if (n.getNodeName().equalsIgnoreCase("bead")) {
-            result = processBead(n);
-        }  
-        else if (n.getNodeName().equalsIgnoreCase("vertex")) {
-            result = processVertex(n);
-        }      
-    	return result;
-    }
-
-    private boolean processBead(Element element) {
-    	beadV1 = decodeInteger(element, "v1");
-    	beadV2 = decodeInteger(element, "v2");
-    	beadLoc = decodeLocation(element);
-    	return true;
-    }
-    
-    private boolean processVertex(Element element) {
-    	int id = decodeInteger(element, "id");
-    	Location loc = decodeLocation(element);
-    	if (junctions[id] != null) {
-    		return false;
-    	}
-    	junctions[id] = new VertexContainer(new Vertex(loc, id));
-    	for (Direction dir : EnumSet.range(Direction.EAST, Direction.NONE)) {
-    		Integer i = decodeInteger(element, dir.toString());
-    		if (i != null) {
-    			junctions[id].edges.add(i);
-    		}
-    	}
-    	return true;
-    }
-    
-    private Integer decodeInteger(Element element, String name) {
-    	String idStr = element.getAttribute(name);
-    	if ((idStr == null) || (idStr.length() == 0)) {
-    		return null;
-    	}
-    	idStr.trim();
-    	if ((idStr.charAt(0) == '"') && (idStr.charAt(idStr.length() - 1) == '"')) {
-    		idStr = idStr.substring(1, idStr.length() -2);
-    	}
-    	return Integer.parseInt(idStr);	
-    }
-    
-    private Location decodeLocation(Element element) {
-    	String locStr = element.getAttribute("loc");
-    	if (locStr == null) {
-    		return null;
-    	}
-    	int spliceIndex = locStr.indexOf(',');
-    	String xLoc = locStr.substring(0, spliceIndex).trim();
-    	String yLoc = locStr.substring(spliceIndex + 1).trim();
-    	int x = (Integer.parseInt(xLoc) * width) / xmlWidth;
-    	int y = (Integer.parseInt(yLoc) * height) / xmlHeight;
-    	return new Location(x, y);
-    }
+	private void decodeLocation(Attributes attributes) throws SAXException {
+		String str = attributes.getValue("loc");
+		if (str == null) {
+			throw new SAXException("Missing loc");
+		}
+		parseLocation(str);
+	}
+	
+	/*
+	 * Parse "x, y" into mLoc scaled from the saved to the current screen
+	 */
+	private void parseLocation(String str) throws SAXException {
+		int comma = str.indexOf(',');
+		if (comma < 0) {
+			throw new SAXException("Invalid loc " + str);
+		}
+		if ((xmlWidth <= 0) || (xmlHeight <= 0)) {
+			throw new SAXException("Invalid maze dimensions");
+		}
+		mLoc[0] = (parseInteger(str, 0, comma) * mazeWidth) / xmlWidth;
+		mLoc[1] = (parseInteger(str, comma + 1, str.length()) * mazeHeight) / xmlHeight;
+	}
+	
+	private static int parseInteger(String str, int from) throws SAXException {
+		return parseInteger(str, from, str.length());
+	}
+	
+	/*
+	 * Parse the decimal number in str[from, to), ignoring surrounding 
+	 * blanks and quotes
+	 */
+	private static int parseInteger(String str, int from, int to) throws SAXException {
+		while ((from < to) && isPadding(str.charAt(from))) {
+			from++;
+		}
+		while ((to > from) && isPadding(str.charAt(to - 1))) {
+			to--;
+		}
+		boolean negative = false;
+		if ((from < to) && (str.charAt(from) == '-')) {
+			negative = true;
+			from++;
+		}
+		if (from == to) {
+			throw new SAXException("Invalid number " + str);
+		}
+		long value = 0;
+		for (int i = from; i < to; i++) {
+			int digit = str.charAt(i) - '0';
+			if ((digit < 0) || (digit > 9)) {
+				throw new SAXException("Invalid number " + str);
+			}
+			value = value * 10 + digit;
+			if (value > Integer.MAX_VALUE) {
+				throw new SAXException("Number out of range " + str);
+			}
+		}
+		return (int)(negative ? -value : value);
+	}
+	
+	private static boolean isPadding(char c) {
+		return (c == ' ') || (c == '\t') || (c == '"');
+	}
 }
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2010, 2012, Sonal Santan < sonal DOT santan AT gmail DOT com >
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+
+
+package ss.beadmaze;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/*
+ * Converts saved mazes between the XML (XMLView) and the binary 
+ * (BinaryView) format. Dimensions are kept as saved.
+ *
+ *   java ss.beadmaze.MazeConverter <in> <out>
+ *
+ * converts to whichever format the input is not in.
+ */
+public class MazeConverter {
+	private static final int mPathWidth = 10;
+	
+	public static boolean xmlToBinary(InputStream in, OutputStream out) {
+		Maze maze = new MazeBuilder(0, 0, mPathWidth).build(in);
+		if (maze == null) {
+			return false;
+		}
+		return new BinaryView(maze).print(out);
+	}
+	
+	public static boolean binaryToXml(InputStream in, FileOutputStream out) {
+		Maze maze = new BinaryMazeBuilder(0, 0, mPathWidth).build(in);
+		if (maze == null) {
+			return false;
+		}
+		return new XMLView(maze).print(out);
+	}
+	
+	public static void main(String args[]) throws IOException {
+		if (args.length != 2) {
+			System.err.println("Usage: MazeConverter <in> <out>");
+			System.exit(2);
+		}
+		InputStream in = new BufferedInputStream(new FileInputStream(args[0]));
+		FileOutputStream out = new FileOutputStream(args[1]);
+		boolean result;
+		try {
+			if (BinaryMazeBuilder.isBinary(in)) {
+				result = binaryToXml(in, out);
+			}
+			else {
+				result = xmlToBinary(in, out);
+			}
+		} finally {
+			in.close();
+			out.close();
+		}
+		if (!result) {
+			System.err.println("Conversion of " + args[0] + " failed");
+			System.exit(1);
+		}
+	}
+}
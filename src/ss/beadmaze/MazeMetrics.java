@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2010, 2012, Sonal Santan < sonal DOT santan AT gmail DOT com >
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+
+
+package ss.beadmaze;
+
+import java.util.Arrays;
+
+import ss.beadmaze.Maze.Direction;
+
+/*
+ * Difficulty metrics of a built maze, computed in two linear passes over
+ * the topology: one scan of the vertex degrees and one breadth first
+ * search from start which yields the solution path. Lengths are counted
+ * in links so that they compare across levels and screen sizes.
+ *
+ * A corridor is a maximal run of links between nodes, where nodes are 
+ * all vertices which are not of degree 2 plus start and end, as in 
+ * Maze.getContractedGraph(). Every link lies on exactly one corridor and
+ * every corridor has two node ends, so the corridor count is half the sum
+ * of the node degrees and no contracted graph needs to be built.
+ */
+public class MazeMetrics {
+	private static final Direction mDirections[] = {Direction.EAST, Direction.WEST, Direction.NORTH, Direction.SOUTH};
+	private final int mVertexCount;
+	private int mLinkCount = 0;
+	private int mDeadEndCount = 0;
+	private int mJunctionCount = 0;
+	private int mJunctionExitCount = 0;
+	private int mCorridorCount = 0;
+	private int mSolutionLength = -1;
+	private int mDecisionPointCount = 0;
+	
+	public MazeMetrics(Maze maze) {
+		this(maze.getTopology(), maze.getStartVertex().getIndex(), maze.getEndVertex().getIndex());
+	}
+	
+	public MazeMetrics(MazeTopology topology, int start, int end) {
+		mVertexCount = topology.getVertexCount();
+		int degree[] = new int[mVertexCount];
+		scanDegrees(topology, start, end, degree);
+		traceSolution(topology, start, end, degree);
+	}
+	
+	private void scanDegrees(MazeTopology topology, int start, int end, int degree[]) {
+		int degreeSum = 0;
+		int nodeDegreeSum = 0;
+		for (int i = 0; i < mVertexCount; i++) {
+			int d = ContractedGraph.getDegree(topology, i);
+			degree[i] = d;
+			degreeSum += d;
+			if (d == 1) {
+				mDeadEndCount++;
+			}
+			else if (d > 2) {
+				mJunctionCount++;
+				// The way back is not a choice
+				mJunctionExitCount += d - 1;
+			}
+			if ((d != 2) || (i == start) || (i == end)) {
+				nodeDegreeSum += d;
+			}
+		}
+		mLinkCount = degreeSum / 2;
+		mCorridorCount = nodeDegreeSum / 2;
+	}
+	
+	/*
+	 * Breadth first search from start recording the parent of every vertex
+	 * reached, then walk back from end along the parents.
+	 */
+	private void traceSolution(MazeTopology topology, int start, int end, int degree[]) {
+		int parent[] = new int[mVertexCount];
+		Arrays.fill(parent, -1);
+		int queue[] = new int[mVertexCount];
+		int head = 0;
+		int tail = 0;
+		queue[tail++] = start;
+		parent[start] = start;
+		while ((head < tail) && (parent[end] < 0)) {
+			int id = queue[head++];
+			for (Direction dir : mDirections) {
+				int next = topology.getNeighbor(id, dir);
+				if ((next >= 0) && (parent[next] < 0)) {
+					parent[next] = id;
+					queue[tail++] = next;
+				}
+			}
+		}
+		if (parent[end] < 0) {
+			// End is not reachable
+			return;
+		}
+		mSolutionLength = 0;
+		for (int id = end; id != start; id = parent[id]) {
+			mSolutionLength++;
+			int p = parent[id];
+			// A decision has to be made where the path offers more than one
+			// way forward; at start every exit counts
+			if ((degree[p] > 2) || ((p == start) && (degree[p] > 1))) {
+				mDecisionPointCount++;
+			}
+		}
+	}
+	
+	public int getVertexCount() {
+		return mVertexCount;
+	}
+	
+	public int getLinkCount() {
+		return mLinkCount;
+	}
+	
+	/*
+	 * Number of links on the path from start to end, -1 if there is none
+	 */
+	public int getSolutionLength() {
+		return mSolutionLength;
+	}
+	
+	public int getDeadEndCount() {
+		return mDeadEndCount;
+	}
+	
+	public int getJunctionCount() {
+		return mJunctionCount;
+	}
+	
+	/*
+	 * Mean number of ways forward at a junction
+	 */
+	public double getBranchingFactor() {
+		return (mJunctionCount == 0) ? 0 : (double)mJunctionExitCount / mJunctionCount;
+	}
+	
+	public int getCorridorCount() {
+		return mCorridorCount;
+	}
+	
+	/*
+	 * Mean number of links in a corridor
+	 */
+	public double getMeanCorridorLength() {
+		return (mCorridorCount == 0) ? 0 : (double)mLinkCount / mCorridorCount;
+	}
+	
+	/*
+	 * Number of vertices on the solution path where more than one way leads
+	 * on, i.e. where a player can take a wrong turn
+	 */
+	public int getDecisionPointCount() {
+		return mDecisionPointCount;
+	}
+	
+	/*
+	 * Fraction of the maze which has to be walked to solve it
+	 */
+	public double getSolutionCoverage() {
+		return (mVertexCount < 2) ? 0 : (double)Math.max(mSolutionLength, 0) / (mVertexCount - 1);
+	}
+	
+	public double getDeadEndDensity() {
+		return (mVertexCount == 0) ? 0 : (double)mDeadEndCount / mVertexCount;
+	}
+	
+	/*
+	 * Decision points per link of the solution
+	 */
+	public double getDecisionDensity() {
+		return (mSolutionLength <= 0) ? 0 : (double)mDecisionPointCount / mSolutionLength;
+	}
+	
+	public String toString() {
+		return "solution=" + mSolutionLength + " deadends=" + mDeadEndCount + " branching=" + getBranchingFactor() +
+			   " corridor=" + getMeanCorridorLength() + " decisions=" + mDecisionPointCount;
+	}
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2010, 2012, Sonal Santan < sonal DOT santan AT gmail DOT com >
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+
+package ss.beadmaze;
+
+import ss.beadmaze.Maze.Direction;
+
+/*
+ * Read only view of the junctions of a maze and the links between them.
+ * Vertices are identified by their index in [0, getVertexCount()). The
+ * Vertex returning functions are convenient but may allocate, hence the
+ * primitive accessors should be preferred on hot paths. 
+ */
+public interface MazeTopology {
+	public int getVertexCount();
+
+	public Vertex getVertex(int id);
+
+	public Vertex findVertex(Vertex node, Direction dir);
+
+	/*
+	 * Returns the index of the neighbor of vertex id in direction dir or 
+	 * -1 if there is no link in that direction
+	 */
+	public int getNeighbor(int id, Direction dir);
+
+	public int getX(int id);
+
+	public int getY(int id);
+}
@@ -0,0 +1,419 @@
+/*
+ * Copyright (c) 2010, 2012, Sonal Santan < sonal DOT santan AT gmail DOT com >
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+
+
+package ss.beadmaze;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.concurrent.Executor;
+
+import ss.beadmaze.Maze.Direction;
+import ss.beadmaze.Maze.Orientation;
+
+/*
+ * Append only journal of a play session, read back by JournalReplayer.
+ * Records are encoded into a fixed size buffer. When it fills up, or on
+ * flush(), it is swapped for a spare one and handed to the writer which
+ * appends it to the file, so recording never allocates, never blocks on
+ * the disk and costs a few byte stores per frame. Once the file grows 
+ * past its limit it is moved to <file>.old and a new one started, which
+ * bounds the disk used to twice the limit. 
+ *
+ * Every buffer after the first begins with a resync record restating the
+ * state the deltas that follow are based on, so a file started by a 
+ * rotation can be decoded on its own. Should the writer fall so far 
+ * behind that the spare buffer is still being written when the next one
+ * fills up, the records of the full buffer are dropped and it starts 
+ * over with a resync record.
+ *
+ * A journal holds what is needed to replay it on another device: the 
+ * display size and path stride the view passed to AutoMazeBuilder, as 
+ * move distances are in pixels, and for every level its seed, generator
+ * and vertex count, so that a maze rebuilt from a different level
+ * schedule is noticed. The version changes whenever the format does.
+ *
+ * All numbers are unsigned LEB128 varints, signed ones zigzag encoded.
+ * Times are microseconds since the previous record of the session. A
+ * string is its UTF-8 length followed by the bytes.
+ *
+ *   magic "BMZJ", version                  once at the start of the file
+ *   session: tag, wall clock millis, display width, height, path stride
+ *                                          once per PlayJournal
+ *   start:   tag, dt, level, seed or 0, generator or "", vertex count,
+ *            stickiness, bead v1, v2, x, y
+ *   key:     tag, dt, key code, direction, speed
+ *   move:    tag, dt, distance, bead x and y as deltas from the previous
+ *            record, and if the tag says so v1 and v2 as deltas as well
+ *   sticky:  tag, dt, the bead vertex stickiness moves are made with from
+ *            now on
+ *   resync:  tag, microseconds since the session start, the fields of 
+ *            session after the tag, and if the tag says so the fields 
+ *            of start after dt
+ *
+ * The low 3 bits of a tag are the record type. A move tag also holds the
+ * orientation in bits 3-4, the moveBead() result + 1 in bits 5-6 and in 
+ * bit 7 whether the bead vertices changed. A start or resync tag has bit
+ * 3 set if the maze is generated and so can be rebuilt from the seed. A
+ * resync tag has bit 4 set if a start was recorded before it.
+ */
+public class PlayJournal {
+	static final int mMagic = 0x424d5a4a;
+	static final int mVersion = 2;
+	static final int mSession = 0;
+	static final int mStart = 1;
+	static final int mKeyDown = 2;
+	static final int mKeyUp = 3;
+	static final int mMove = 4;
+	static final int mSticky = 5;
+	static final int mResync = 6;
+	static final int mTypeMask = 0x7;
+	static final int mGeneratedBit = 0x8;
+	static final int mStartedBit = 0x10;
+	static final int mVerticesBit = 0x80;
+	// Longer generator names are cut short
+	static final int mMaxName = 32;
+	// Largest record: a resync with tag, a string and 13 varints of at 
+	// most ten bytes each
+	static final int mMaxRecord = 1 + (1 + mMaxName) + 13 * 10;
+	
+	private final String mFile;
+	private final long mMaxLength;
+	private final Executor mWriter;
+	// What the mazes are built with, see AutoMazeBuilder
+	private final int mWidth;
+	private final int mHeight;
+	private final int mPathStride;
+	private byte mBuffer[];
+	private int mCount = 0;
+	// Length of the resync record at the start of mBuffer
+	private int mResyncCount = 0;
+	// Null while the writer holds it
+	private byte mSpare[];
+	private boolean mClosed = false;
+	
+	// Only accessed by the writer
+	private FileOutputStream mStream = null;
+	private long mLength = 0;
+	private boolean mFailed = false;
+	
+	// Delta base: the state as of the last record
+	private final long mSessionMillis;
+	private final long mSessionMicros;
+	private long mLastMicros;
+	private boolean mStarted = false;
+	private int mLevel = -1;
+	private boolean mGenerated = false;
+	private long mSeed = 0;
+	private String mGenerator = null;
+	private byte mGeneratorBytes[] = new byte[0];
+	private int mVertexCount = 0;
+	private int mStickiness = 0;
+	private int mV1 = 0;
+	private int mV2 = 0;
+	private int mX = 0;
+	private int mY = 0;
+	
+	/*
+	 * Buffers are written by running tasks on writer, which has to run 
+	 * them one at a time in the order they were queued. The file is only
+	 * opened for the first buffer. If writing fails the journal reports it
+	 * once and drops all further records. width, height and pathStride are
+	 * those the mazes are built with, see AutoMazeBuilder.
+	 */
+	public PlayJournal(String file, int bufferSize, long maxLength, Executor writer, 
+			           int width, int height, int pathStride) {
+		mFile = file;
+		mMaxLength = maxLength;
+		mWriter = writer;
+		mBuffer = new byte[Math.max(bufferSize, 2 * mMaxRecord)];
+		mSpare = new byte[mBuffer.length];
+		mSessionMillis = System.currentTimeMillis();
+		mSessionMicros = System.nanoTime() / 1000;
+		mLastMicros = mSessionMicros;
+		mWidth = width;
+		mHeight = height;
+		mPathStride = pathStride;
+		put(mSession);
+		putSession();
+	}
+	
+	/*
+	 * Record that the bead was placed on maze at the start of level, or 
+	 * restored there. generator is the name the level configuration gives
+	 * for level if maze was generated, else null. Repeated calls without a
+	 * change in between are only recorded once.
+	 */
+	public synchronized void recordStart(int level, String generator, Maze maze) {
+		if (mClosed) {
+			return;
+		}
+		Bead bead = maze.getBead();
+		if (mStarted && (level == mLevel) && (bead.getVertexId1() == mV1) && (bead.getVertexId2() == mV2) &&
+			(bead.getX() == mX) && (bead.getY() == mY)) {
+			return;
+		}
+		reserve();
+		put(maze.isGenerated() ? (mStart | mGeneratedBit) : mStart);
+		putTime();
+		mStarted = true;
+		mLevel = level;
+		mGenerated = maze.isGenerated();
+		mSeed = maze.isGenerated() ? maze.getSeed() : 0;
+		setGenerator(maze.isGenerated() ? generator : null);
+		mVertexCount = maze.getVertexCount();
+		mStickiness = maze.getBeadVertexStickiness();
+		mV1 = bead.getVertexId1();
+		mV2 = bead.getVertexId2();
+		mX = bead.getX();
+		mY = bead.getY();
+		putStart();
+	}
+	
+	/*
+	 * Record a key event with the direction and speed it left the game in
+	 */
+	public synchronized void recordKey(boolean down, int keyCode, Direction dir, int speed) {
+		if (mClosed) {
+			return;
+		}
+		reserve();
+		put(down ? mKeyDown : mKeyUp);
+		putTime();
+		putVarint(keyCode);
+		putVarint(dir.ordinal());
+		putVarint(zigzag(speed));
+	}
+	
+	/*
+	 * Record a Maze.moveBead(distance, orient) call on maze which returned
+	 * result, together with where it left the bead. A change of the bead
+	 * vertex stickiness since the last move is recorded before it.
+	 */
+	public synchronized void recordMove(int distance, Orientation orient, int result, Maze maze) {
+		if (mClosed) {
+			return;
+		}
+		Bead bead = maze.getBead();
+		int v1 = bead.getVertexId1();
+		int v2 = bead.getVertexId2();
+		if (maze.getBeadVertexStickiness() != mStickiness) {
+			reserve();
+			put(mSticky);
+			putTime();
+			mStickiness = maze.getBeadVertexStickiness();
+			putVarint(mStickiness);
+		}
+		reserve();
+		boolean vertices = (v1 != mV1) || (v2 != mV2);
+		put(mMove | (orient.ordinal() << 3) | ((result + 1) << 5) | (vertices ? mVerticesBit : 0));
+		putTime();
+		putVarint(zigzag(distance));
+		putVarint(zigzag(bead.getX() - mX));
+		putVarint(zigzag(bead.getY() - mY));
+		if (vertices) {
+			putVarint(zigzag(v1 - mV1));
+			putVarint(zigzag(v2 - mV2));
+			mV1 = v1;
+			mV2 = v2;
+		}
+		mX = bead.getX();
+		mY = bead.getY();
+	}
+	
+	/*
+	 * Hand the records buffered so far to the writer. Returns false if 
+	 * they stay buffered because the writer still holds the spare buffer.
+	 */
+	public synchronized boolean flush() {
+		if (mClosed || (mCount == mResyncCount)) {
+			return true;
+		}
+		return handOff();
+	}
+	
+	/*
+	 * Hand the remaining records to the writer and close the file once
+	 * they are written. Later records are ignored.
+	 */
+	public synchronized void close() {
+		if (mClosed) {
+			return;
+		}
+		mClosed = true;
+		final byte buffer[] = mBuffer;
+		final int count = (mCount == mResyncCount) ? 0 : mCount;
+		mBuffer = null;
+		mWriter.execute(new Runnable() {
+			public void run() {
+				write(buffer, count);
+				if (mStream != null) {
+					try {
+						mStream.close();
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+					mStream = null;
+				}
+			}
+		});
+	}
+	
+	private boolean handOff() {
+		if (mSpare == null) {
+			return false;
+		}
+		final byte buffer[] = mBuffer;
+		final int count = mCount;
+		mBuffer = mSpare;
+		mSpare = null;
+		mCount = 0;
+		putResync();
+		mWriter.execute(new Runnable() {
+			public void run() {
+				write(buffer, count);
+				synchronized (PlayJournal.this) {
+					mSpare = buffer;
+				}
+			}
+		});
+		return true;
+	}
+	
+	private void reserve() {
+		if ((mCount + mMaxRecord > mBuffer.length) && !handOff()) {
+			// The writer is behind, drop what this buffer holds
+			mCount = 0;
+			putResync();
+		}
+	}
+	
+	/*
+	 * Runs on the writer. Rotation only happens between buffers, each of
+	 * which starts with a session or resync record.
+	 */
+	private void write(byte buffer[], int count) {
+		if (mFailed || (count == 0)) {
+			return;
+		}
+		try {
+			if ((mStream != null) && (mLength + count > mMaxLength)) {
+				mStream.close();
+				mStream = null;
+				File file = new File(mFile);
+				File old = new File(mFile + ".old");
+				old.delete();
+				if (!file.renameTo(old)) {
+					throw new IOException("Could not rotate " + mFile);
+				}
+			}
+			if (mStream == null) {
+				mLength = new File(mFile).length();
+				mStream = new FileOutputStream(mFile, true);
+				if (mLength == 0) {
+					byte header[] = {(byte)(mMagic >>> 24), (byte)(mMagic >>> 16), (byte)(mMagic >>> 8), (byte)mMagic, mVersion};
+					mStream.write(header);
+					mLength = header.length;
+				}
+			}
+			mStream.write(buffer, 0, count);
+			mLength += count;
+		} catch (IOException e) {
+			e.printStackTrace();
+			mFailed = true;
+		}
+	}
+	
+	private void putResync() {
+		int tag = mResync;
+		if (mStarted) {
+			tag |= mStartedBit | (mGenerated ? mGeneratedBit : 0);
+		}
+		put(tag);
+		putVarint(mLastMicros - mSessionMicros);
+		putSession();
+		if (mStarted) {
+			putStart();
+		}
+		mResyncCount = mCount;
+	}
+	
+	private void setGenerator(String generator) {
+		if (generator == null) {
+			generator = "";
+		}
+		if (generator.equals(mGenerator)) {
+			return;
+		}
+		mGenerator = generator;
+		try {
+			mGeneratorBytes = generator.getBytes("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			e.printStackTrace();
+			mGeneratorBytes = new byte[0];
+		}
+	}
+	
+	private void putSession() {
+		putVarint(mSessionMillis);
+		putVarint(mWidth);
+		putVarint(mHeight);
+		putVarint(mPathStride);
+	}
+	
+	private void putStart() {
+		putVarint(mLevel);
+		putVarint(mSeed);
+		int length = Math.min(mGeneratorBytes.length, mMaxName);
+		putVarint(length);
+		System.arraycopy(mGeneratorBytes, 0, mBuffer, mCount, length);
+		mCount += length;
+		putVarint(mVertexCount);
+		putVarint(mStickiness);
+		putVarint(mV1);
+		putVarint(mV2);
+		putVarint(zigzag(mX));
+		putVarint(zigzag(mY));
+	}
+	
+	private void putTime() {
+		long micros = System.nanoTime() / 1000;
+		putVarint(micros - mLastMicros);
+		mLastMicros = micros;
+	}
+	
+	private void put(int value) {
+		mBuffer[mCount++] = (byte)value;
+	}
+	
+	private void putVarint(long value) {
+		while ((value & ~0x7fL) != 0) {
+			mBuffer[mCount++] = (byte)((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		mBuffer[mCount++] = (byte)value;
+	}
+	
+	static long zigzag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2010, 2012, Sonal Santan < sonal DOT santan AT gmail DOT com >
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+
+package ss.beadmaze;
+
+import java.util.Random;
+
+import ss.beadmaze.Maze.Direction;
+
+/*
+ * Randomized Prim. The maze grows from a single cell by repeatedly linking
+ * a random frontier cell to a random neighbor already in the maze. Produces
+ * a maze with many short branches radiating from the start cell. The 
+ * frontier is kept in an int array with swap-remove.
+ */
+public class PrimGenerator implements MazeGenerator {
+	private static final Direction mDirections[] = {Direction.EAST, Direction.WEST, Direction.NORTH, Direction.SOUTH};
+	private static final byte mOutside = 0;
+	private static final byte mFrontier = 1;
+	private static final byte mInside = 2;
+	
+	public void generate(GridMaze grid, Random rand) {
+		int count = grid.getVertexCount();
+		byte state[] = new byte[count];
+		int frontier[] = new int[count];
+		int frontierCount = 0;
+		int inside[] = new int[mDirections.length];
+		
+		state[0] = mInside;
+		frontierCount = addFrontier(grid, 0, state, frontier, frontierCount);
+		while (frontierCount > 0) {
+			int pick = rand.nextInt(frontierCount);
+			int id = frontier[pick];
+			frontier[pick] = frontier[--frontierCount];
+			
+			int insideCount = 0;
+			for (int i = 0; i < mDirections.length; i++) {
+				int adjacent = grid.getAdjacent(id, mDirections[i]);
+				if ((adjacent >= 0) && (state[adjacent] == mInside)) {
+					inside[insideCount++] = i;
+				}
+			}
+			assert(insideCount > 0);
+			grid.addLink(id, mDirections[inside[rand.nextInt(insideCount)]]);
+			state[id] = mInside;
+			frontierCount = addFrontier(grid, id, state, frontier, frontierCount);
+		}
+	}
+	
+	private int addFrontier(GridMaze grid, int id, byte state[], int frontier[], int frontierCount) {
+		for (Direction dir : mDirections) {
+			int adjacent = grid.getAdjacent(id, dir);
+			if ((adjacent >= 0) && (state[adjacent] == mOutside)) {
+				state[adjacent] = mFrontier;
+				frontier[frontierCount++] = adjacent;
+			}
+		}
+		return frontierCount;
+	}
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2010, 2012, Sonal Santan < sonal DOT santan AT gmail DOT com >
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+
+
+package ss.beadmaze;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import ss.beadmaze.Maze.Direction;
+
+/*
+ * File format for grid mazes too large to be held in memory. The lattice
+ * is cut into square regions of regionSize cells, the last row and column
+ * of regions taking what is left. Each region is stored on its own and a
+ * header index gives its offset, so RegionTopology reads only the regions
+ * that are used:
+ *
+ *   header: magic, version, xCount, yCount, width, height, path width,
+ *           region size, start, end                          (10 ints)
+ *   index:  per region in row major order offset (long), length (int)
+ *   region: per cell in row major order a 4 bit link mask, bit
+ *           Direction.ordinal(), two cells a byte, low nibble first
+ *
+ * Every cell carries all four of its links, so a cell on a region border
+ * is resolved without touching the region next to it. All values are big
+ * endian as in the row files of StreamingMazeBuilder.
+ */
+public class RegionMazeFile {
+	static final int mMagic = 0x47524d42; // "BMRG"
+	static final int mVersion = 1;
+	static final int mHeaderSize = 10 * 4;
+	static final int mIndexEntrySize = 8 + 4;
+	private static final Direction mDirections[] = {Direction.EAST, Direction.WEST, Direction.NORTH, Direction.SOUTH};
+	
+	static int getRegionCount(int count, int regionSize) {
+		return (count + regionSize - 1) / regionSize;
+	}
+	
+	static int getRegionBytes(int regionWidth, int regionHeight) {
+		return (regionWidth * regionHeight + 1) / 2;
+	}
+	
+	/*
+	 * Write grid with the given start and end cell
+	 */
+	public static boolean write(GridMaze grid, int start, int end, int regionSize, String file) {
+		return write(new GridSource(grid), grid.getXCount(), grid.getYCount(), grid.getWidth(), grid.getHeight(), 
+				     grid.getPathWidth(), start, end, regionSize, file);
+	}
+	
+	/*
+	 * Convert a row file of StreamingMazeBuilder a band of regions at a time,
+	 * so that neither file has to fit in memory. The maze runs from the top 
+	 * left to the bottom right cell.
+	 */
+	public static boolean convert(String rowFile, String file, int regionSize, int w, int h, int p) {
+		RowMazeReader reader = new RowMazeReader(rowFile);
+		if (!reader.open()) {
+			return false;
+		}
+		int xCount = reader.getXCount();
+		int yCount = reader.getYCount();
+		return write(new RowSource(reader, w, h, p), xCount, yCount, w, h, p, 
+				     0, xCount * yCount - 1, regionSize, file);
+	}
+	
+	/*
+	 * Open a maze saved by write() or convert(). Regions are loaded as the
+	 * game reaches them and at most budget bytes of them are kept. Returns
+	 * null if file does not hold a region maze.
+	 */
+	public static Maze open(String file, long budget) {
+		RegionTopology topology = RegionTopology.open(file, budget);
+		if (topology == null) {
+			return null;
+		}
+		int count = topology.getVertexCount();
+		int start = topology.getStart();
+		int end = topology.getEnd();
+		if ((start < 0) || (start >= count) || (end < 0) || (end >= count)) {
+			topology.close();
+			return null;
+		}
+		Bead bead = new Bead(topology, topology.getVertex(start), 10);
+		return new Maze(bead, topology, topology.getVertex(end), topology.getHeight(), topology.getWidth(), 
+				        topology.getPathWidth() / 2);
+	}
+	
+	private static boolean write(Source source, int xCount, int yCount, int w, int h, int p,
+			                     int start, int end, int regionSize, String file) {
+		if ((regionSize <= 0) || ((long)xCount * yCount > Integer.MAX_VALUE)) {
+			return false;
+		}
+		int regionsX = getRegionCount(xCount, regionSize);
+		int regionsY = getRegionCount(yCount, regionSize);
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+			try {
+				out.writeInt(mMagic);
+				out.writeInt(mVersion);
+				out.writeInt(xCount);
+				out.writeInt(yCount);
+				out.writeInt(w);
+				out.writeInt(h);
+				out.writeInt(p);
+				out.writeInt(regionSize);
+				out.writeInt(start);
+				out.writeInt(end);
+				// Regions follow the index back to back
+				long offset = mHeaderSize + (long)regionsX * regionsY * mIndexEntrySize;
+				for (int ry = 0; ry < regionsY; ry++) {
+					for (int rx = 0; rx < regionsX; rx++) {
+						int length = getRegionBytes(Math.min(regionSize, xCount - rx * regionSize), 
+								                    Math.min(regionSize, yCount - ry * regionSize));
+						out.writeLong(offset);
+						out.writeInt(length);
+						offset += length;
+					}
+				}
+				for (int ry = 0; ry < regionsY; ry++) {
+					int y0 = ry * regionSize;
+					int y1 = Math.min(y0 + regionSize, yCount);
+					GridMaze band = source.getBand(y0, y1);
+					if (band == null) {
+						return false;
+					}
+					int bandY0 = source.getBandOffset(y0);
+					for (int rx = 0; rx < regionsX; rx++) {
+						int x0 = rx * regionSize;
+						int x1 = Math.min(x0 + regionSize, xCount);
+						out.write(encodeRegion(band, bandY0, x0, y0, x1, y1));
+					}
+				}
+			}
+			finally {
+				out.close();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+		return true;
+	}
+	
+	/*
+	 * Link masks of cells [x0, x1) x [y0, y1); row y of the maze is row
+	 * y - bandY0 of band
+	 */
+	private static byte[] encodeRegion(GridMaze band, int bandY0, int x0, int y0, int x1, int y1) {
+		byte data[] = new byte[getRegionBytes(x1 - x0, y1 - y0)];
+		int i = 0;
+		for (int y = y0; y < y1; y++) {
+			for (int x = x0; x < x1; x++, i++) {
+				int id = band.getId(x, y - bandY0);
+				int mask = 0;
+				for (Direction dir : mDirections) {
+					if (band.getNeighbor(id, dir) >= 0) {
+						mask |= 1 << dir.ordinal();
+					}
+				}
+				data[i >> 1] |= mask << ((i & 1) << 2);
+			}
+		}
+		return data;
+	}
+	
+	/*
+	 * Supplies the rows of one band of regions plus the rows next to it, 
+	 * which carry the NORTH and SOUTH links across the band border
+	 */
+	private interface Source {
+		GridMaze getBand(int y0, int y1);
+		
+		int getBandOffset(int y0);
+	}
+	
+	private static class GridSource implements Source {
+		private final GridMaze mGrid;
+		
+		GridSource(GridMaze grid) {
+			mGrid = grid;
+		}
+		
+		public GridMaze getBand(int y0, int y1) {
+			return mGrid;
+		}
+		
+		public int getBandOffset(int y0) {
+			return 0;
+		}
+	}
+	
+	private static class RowSource implements Source {
+		private final RowMazeReader mReader;
+		private final int mWidth;
+		private final int mHeight;
+		private final int mPathWidth;
+		
+		RowSource(RowMazeReader reader, int w, int h, int p) {
+			mReader = reader;
+			mWidth = w;
+			mHeight = h;
+			mPathWidth = p;
+		}
+		
+		public GridMaze getBand(int y0, int y1) {
+			// One row above for the NORTH links, one below as readRows() 
+			// drops the SOUTH links of the last row read
+			int first = getBandOffset(y0);
+			int last = Math.min(y1 + 1, mReader.getYCount());
+			return mReader.readRows(first, last - first, mWidth, mHeight, mPathWidth);
+		}
+		
+		public int getBandOffset(int y0) {
+			return Math.max(y0 - 1, 0);
+		}
+	}
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright (c) 2010, 2012, Sonal Santan < sonal DOT santan AT gmail DOT com >
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+
+
+package ss.beadmaze;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import ss.beadmaze.Maze.Direction;
+
+/*
+ * Topology of a RegionMazeFile which loads regions on demand. Loaded 
+ * regions are kept in least recently used order and the oldest ones are
+ * dropped once their total size exceeds the memory budget, though the
+ * region in use is always kept. Co-ordinates are derived from the lattice
+ * position as in GridMaze and never need a region. Since neighbors are 
+ * looked up around the bead only the regions near it are ever read.
+ *
+ * Accessors are synchronized as the cache is updated on every lookup.
+ */
+public class RegionTopology implements LatticeTopology {
+	private final RandomAccessFile mFile;
+	private final int mXCount;
+	private final int mYCount;
+	private final int mWidth;
+	private final int mHeight;
+	private final int mPathWidth;
+	private final int mRegionSize;
+	private final int mRegionsX;
+	private final int mStart;
+	private final int mEnd;
+	private final long mOffsets[];
+	private final int mLengths[];
+	private final long mBudget;
+	private final LinkedHashMap<Integer, byte[]> mCache = new LinkedHashMap<Integer, byte[]>(16, 0.75f, true);
+	private long mCachedBytes = 0;
+	private int mLoadCount = 0;
+	// The last region used, which saves the cache lookup while the bead 
+	// stays within one region
+	private int mLastRegion = -1;
+	private byte mLastData[] = null;
+	
+	private RegionTopology(RandomAccessFile file, int header[], long offsets[], int lengths[], long budget) {
+		mFile = file;
+		mXCount = header[0];
+		mYCount = header[1];
+		mWidth = header[2];
+		mHeight = header[3];
+		mPathWidth = header[4];
+		mRegionSize = header[5];
+		mStart = header[6];
+		mEnd = header[7];
+		mRegionsX = RegionMazeFile.getRegionCount(mXCount, mRegionSize);
+		mOffsets = offsets;
+		mLengths = lengths;
+		mBudget = budget;
+	}
+	
+	/*
+	 * Returns null if file does not hold a region maze
+	 */
+	public static RegionTopology open(String file, long budget) {
+		RandomAccessFile f = null;
+		try {
+			f = new RandomAccessFile(file, "r");
+			if ((f.length() < RegionMazeFile.mHeaderSize) || (f.readInt() != RegionMazeFile.mMagic) || 
+				(f.readInt() != RegionMazeFile.mVersion)) {
+				f.close();
+				return null;
+			}
+			int header[] = new int[8];
+			for (int i = 0; i < header.length; i++) {
+				header[i] = f.readInt();
+			}
+			int xCount = header[0];
+			int yCount = header[1];
+			int regionSize = header[5];
+			if ((xCount <= 0) || (yCount <= 0) || (regionSize <= 0) || ((long)xCount * yCount > Integer.MAX_VALUE)) {
+				f.close();
+				return null;
+			}
+			int regionCount = RegionMazeFile.getRegionCount(xCount, regionSize) * RegionMazeFile.getRegionCount(yCount, regionSize);
+			long offsets[] = new long[regionCount];
+			int lengths[] = new int[regionCount];
+			for (int i = 0; i < regionCount; i++) {
+				offsets[i] = f.readLong();
+				lengths[i] = f.readInt();
+				if ((offsets[i] < 0) || (lengths[i] < 0) || (offsets[i] + lengths[i] > f.length())) {
+					f.close();
+					return null;
+				}
+			}
+			return new RegionTopology(f, header, offsets, lengths, budget);
+		} catch (IOException e) {
+			e.printStackTrace();
+			if (f != null) {
+				try {
+					f.close();
+				} catch (IOException e1) {
+					e1.printStackTrace();
+				}
+			}
+			return null;
+		}
+	}
+	
+	public synchronized void close() {
+		mCache.clear();
+		mLastData = null;
+		mLastRegion = -1;
+		try {
+			mFile.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	public int getXCount() {
+		return mXCount;
+	}
+	
+	public int getYCount() {
+		return mYCount;
+	}
+	
+	public int getWidth() {
+		return mWidth;
+	}
+	
+	public int getHeight() {
+		return mHeight;
+	}
+	
+	public int getPathWidth() {
+		return mPathWidth;
+	}
+	
+	public int getStart() {
+		return mStart;
+	}
+	
+	public int getEnd() {
+		return mEnd;
+	}
+	
+	/*
+	 * Number of regions read from the file so far
+	 */
+	public synchronized int getLoadCount() {
+		return mLoadCount;
+	}
+	
+	public synchronized int getCachedRegionCount() {
+		return mCache.size();
+	}
+	
+	public int getVertexCount() {
+		return mXCount * mYCount;
+	}
+	
+	public Vertex getVertex(int id) {
+		return new Vertex(new Location(getX(id), getY(id)), id);
+	}
+	
+	public Vertex findVertex(Vertex node, Direction dir) {
+		int id = getNeighbor(node.getIndex(), dir);
+		return (id < 0) ? null : getVertex(id);
+	}
+	
+	public int getX(int id) {
+		return GridMaze.getPosition(id % mXCount, mXCount, mWidth, mPathWidth);
+	}
+	
+	public int getY(int id) {
+		return GridMaze.getPosition(id / mXCount, mYCount, mHeight, mPathWidth);
+	}
+	
+	public int getColumn(int x) {
+		return GridMaze.getNearestIndex(x, mXCount, mWidth, mPathWidth);
+	}
+	
+	public int getRow(int y) {
+		return GridMaze.getNearestIndex(y, mYCount, mHeight, mPathWidth);
+	}
+	
+	public synchronized int getNeighbor(int id, Direction dir) {
+		if (dir.ordinal() > Direction.SOUTH.ordinal()) {
+			// NONE and ERROR never have a neighbor
+			return -1;
+		}
+		int x = id % mXCount;
+		int y = id / mXCount;
+		int rx = x / mRegionSize;
+		int ry = y / mRegionSize;
+		int region = ry * mRegionsX + rx;
+		byte data[] = getRegion(region);
+		if (data == null) {
+			return -1;
+		}
+		int regionWidth = Math.min(mRegionSize, mXCount - rx * mRegionSize);
+		int i = (y - ry * mRegionSize) * regionWidth + (x - rx * mRegionSize);
+		int mask = (data[i >> 1] >> ((i & 1) << 2)) & 0xf;
+		if ((mask & (1 << dir.ordinal())) == 0) {
+			return -1;
+		}
+		switch (dir) {
+		case EAST:
+			return id + 1;
+		case WEST:
+			return id - 1;
+		case NORTH:
+			return id - mXCount;
+		default:
+			return id + mXCount;
+		}
+	}
+	
+	private byte[] getRegion(int region) {
+		if (region == mLastRegion) {
+			return mLastData;
+		}
+		byte data[] = mCache.get(region);
+		if (data == null) {
+			data = loadRegion(region);
+			if (data == null) {
+				return null;
+			}
+		}
+		mLastRegion = region;
+		mLastData = data;
+		return data;
+	}
+	
+	private byte[] loadRegion(int region) {
+		byte data[] = new byte[mLengths[region]];
+		try {
+			mFile.seek(mOffsets[region]);
+			mFile.readFully(data);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+		mLoadCount++;
+		mCache.put(region, data);
+		mCachedBytes += data.length;
+		// Drop the least recently used regions but never the new one
+		Iterator<Map.Entry<Integer, byte[]>> i = mCache.entrySet().iterator();
+		while ((mCachedBytes > mBudget) && (mCache.size() > 1)) {
+			Map.Entry<Integer, byte[]> eldest = i.next();
+			if (eldest.getKey() == region) {
+				break;
+			}
+			mCachedBytes -= eldest.getValue().length;
+			i.remove();
+		}
+		return data;
+	}
+}
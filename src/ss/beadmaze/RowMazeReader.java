@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2010, 2012, Sonal Santan < sonal DOT santan AT gmail DOT com >
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+
+package ss.beadmaze;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import ss.beadmaze.Maze.Direction;
+
+/*
+ * Random access reader for the row files written by StreamingMazeBuilder.
+ * The layout is a fixed header followed by one fixed size record per row:
+ *
+ *   header: magic, version, xCount, yCount (ints), seed (long)
+ *   row:    2 bits per cell, bit 2x is the EAST and bit 2x+1 the SOUTH
+ *           passage of cell x, padded to whole bytes
+ *
+ * Since rows have a fixed size any range of rows is read with a single seek.
+ */
+public class RowMazeReader {
+	private static final int mMagic = 0x57524d42; // "BMRW"
+	private static final int mVersion = 1;
+	private static final int mHeaderSize = 4 * 4 + 8;
+	
+	private int mXCount = 0;
+	private int mYCount = 0;
+	private long mSeed = 0;
+	private final String mFile;
+	
+	public RowMazeReader(String file) {
+		mFile = file;
+	}
+	
+	static int getRowBytes(int xCount) {
+		return (2 * xCount + 7) / 8;
+	}
+	
+	static long getRowOffset(int xCount, int row) {
+		return mHeaderSize + (long)row * getRowBytes(xCount);
+	}
+	
+	static void writeHeader(RandomAccessFile f, int xCount, int yCount, long seed) throws IOException {
+		f.seek(0);
+		f.writeInt(mMagic);
+		f.writeInt(mVersion);
+		f.writeInt(xCount);
+		f.writeInt(yCount);
+		f.writeLong(seed);
+	}
+	
+	/*
+	 * Read the header. Returns false if the file is not a complete row file.
+	 */
+	public boolean open() {
+		try {
+			RandomAccessFile f = new RandomAccessFile(mFile, "r");
+			try {
+				if ((f.length() < mHeaderSize) || (f.readInt() != mMagic) || (f.readInt() != mVersion)) {
+					return false;
+				}
+				mXCount = f.readInt();
+				mYCount = f.readInt();
+				mSeed = f.readLong();
+				return f.length() >= getRowOffset(mXCount, mYCount);
+			}
+			finally {
+				f.close();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+	}
+	
+	public int getXCount() {
+		return mXCount;
+	}
+	
+	public int getYCount() {
+		return mYCount;
+	}
+	
+	public long getSeed() {
+		return mSeed;
+	}
+	
+	/*
+	 * Load rows [first, first + count) as a GridMaze laid out over a w x h
+	 * area. Passages leading SOUTH out of the last loaded row are dropped.
+	 * Returns null on error.
+	 */
+	public GridMaze readRows(int first, int count, int w, int h, int p) {
+		if ((first < 0) || (count <= 0) || (first + count > mYCount)) {
+			return null;
+		}
+		GridMaze grid = new GridMaze(mXCount, count, w, h, p);
+		byte row[] = new byte[getRowBytes(mXCount)];
+		try {
+			RandomAccessFile f = new RandomAccessFile(mFile, "r");
+			try {
+				f.seek(getRowOffset(mXCount, first));
+				for (int y = 0; y < count; y++) {
+					f.readFully(row);
+					for (int x = 0; x < mXCount; x++) {
+						int id = grid.getId(x, y);
+						if ((row[(2 * x) >>> 3] & (1 << ((2 * x) & 7))) != 0) {
+							grid.addLink(id, Direction.EAST);
+						}
+						if ((y + 1 < count) && ((row[(2 * x + 1) >>> 3] & (1 << ((2 * x + 1) & 7))) != 0)) {
+							grid.addLink(id, Direction.SOUTH);
+						}
+					}
+				}
+			}
+			finally {
+				f.close();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+		return grid;
+	}
+}
@@ -18,17 +18,30 @@
  */
 
 package ss.beadmaze;
+import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
 
 import ss.beadmaze.Maze.Direction;
+import ss.beadmaze.Maze.Orientation;
 
 public class SVGView {
+	private static final Direction mDirections[] = {Direction.EAST, Direction.WEST, Direction.NORTH, Direction.SOUTH};
+	private static final int mBufferSize = 1 << 16;
 	private String file;
 	private Maze maze;
 	private int tabCount;
-	private FileWriter fileStream;
+	private Writer fileStream;
 	private final int beadRadius = 10;
+	private boolean mergePaths = false;
+	// Scratch space for formatting numbers: "-2147483648"
+	private final char mDigits[] = new char[11];
+	// Current point of the path being written and direction the last walk
+	// ended in
+	private int penX = 0;
+	private int penY = 0;
+	private Direction walkDir = Direction.NONE;
 	
 	public SVGView(String f, Maze m) {
 		file = f;
@@ -36,15 +49,34 @@ public class SVGView {
 		tabCount = 0;
 	}
 	
+	/*
+	 * Write all links as one <path> instead of a <rect> per link. The path
+	 * is stroked as wide as a link with square caps, so it covers exactly 
+	 * the same area. Every corridor between two vertices which are not
+	 * simple bends is one subpath of relative h and v commands, with the
+	 * links along a straight stretch merged into one command. This makes
+	 * the file about ten times smaller or better, and it is written in one
+	 * pass over the vertices without memory proportional to the maze.
+	 */
+	public void setMergePaths(boolean merge) {
+		mergePaths = merge;
+	}
+	
 	public boolean print() {
 	 	try {
-			fileStream = new FileWriter(file);
-			print(maze);
-			fileStream.close();
+			fileStream = new BufferedWriter(new FileWriter(file), mBufferSize);
+			try {
+				print(maze);
+			}
+			finally {
+				fileStream.close();
+			}
 		} catch (IOException e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
 			return false;
+		} finally {
+			fileStream = null;
 		}
 		return true;
 	}
@@ -68,14 +100,19 @@ public class SVGView {
 		printAttribute("height", maze.getHeight());
 		printStyleAttribute("green", "seagreen");
 		fileStream.write("/>\n");
-		print(maze.getEdge());
+		if (mergePaths) {
+			printPath(maze.getTopology());
+		}
+		else {
+			print(maze.getTopology());
+		}
 		print(maze.getBead());
 		tabCount--;
 		printTab();
 		fileStream.write("</svg>\n");
 	}
 	// nandita 452-1471
-	private void print(Edge edge) throws IOException {
+	private void print(MazeTopology edge) throws IOException {
 		int vertexCount = edge.getVertexCount();
 		printTab();
 		fileStream.write("<g");
@@ -86,7 +123,7 @@ public class SVGView {
 		printTab();
 		fileStream.write("<desc>Paths of the Maze</desc>\n");
 		for (int i = 0; i< vertexCount; i++) {
-			printLinks(edge, edge.getVertex(i));
+			printLinks(edge, i);
 		}
 		tabCount--;
 		printTab();
@@ -110,29 +147,29 @@ public class SVGView {
 		*/
 	}
 	
-	private void printLinks(Edge edge, Vertex junction) throws IOException {
+	private void printLinks(MazeTopology edge, int junction) throws IOException {
 		printLinks(edge, junction, Direction.EAST);
 		printLinks(edge, junction, Direction.SOUTH);
 	}
 	
-	private void printLinks(Edge edge, Vertex junction, Direction dir) throws IOException {
-		Vertex v = edge.findVertex(junction, dir);	
-		if (v == null) {
+	private void printLinks(MazeTopology edge, int junction, Direction dir) throws IOException {
+		int v = edge.getNeighbor(junction, dir);	
+		if (v < 0) {
 			return;
 		}
 		
-		int x = junction.getLocation().getX() - beadRadius;
-		int y = junction.getLocation().getY() - beadRadius;
+		int x = edge.getX(junction) - beadRadius;
+		int y = edge.getY(junction) - beadRadius;
 		int width, height;
 		
 		if (dir == Direction.EAST) {
-			width = v.getLocation().getX() - x + beadRadius ;
+			width = edge.getX(v) - x + beadRadius ;
 			height = 2 * beadRadius;
 		}
 		else {
 			assert(dir == Direction.SOUTH);
 			width = 2 * beadRadius;
-			height = v.getLocation().getY() - y + beadRadius;
+			height = edge.getY(v) - y + beadRadius;
 		}
 		
 		printTab();
@@ -144,12 +181,160 @@ public class SVGView {
 		fileStream.write("/>\n");
 	}
 	
+	private void printPath(MazeTopology edge) throws IOException {
+		printTab();
+		fileStream.write("<path");
+		printAttribute("id", "path");
+		printAttribute("fill", "none");
+		printAttribute("stroke", "orange");
+		printAttribute("stroke-width", 2 * beadRadius);
+		printAttribute("stroke-linecap", "square");
+		fileStream.write(" d=\"");
+		penX = 0;
+		penY = 0;
+		int vertexCount = edge.getVertexCount();
+		for (int i = 0; i < vertexCount; i++) {
+			int degree = getDegree(edge, i);
+			if (degree == 2) {
+				continue;
+			}
+			for (Direction dir : mDirections) {
+				if (edge.getNeighbor(i, dir) < 0) {
+					continue;
+				}
+				int end = walk(edge, i, dir, false);
+				if (!isFirstWalk(i, dir, end)) {
+					continue;
+				}
+				// At a junction alternately write corridors towards and away
+				// from it so that every other one needs no move
+				if ((degree < 3) || ((penX == edge.getX(i)) && (penY == edge.getY(i)))) {
+					walk(edge, i, dir, true);
+				}
+				else {
+					walk(edge, end, Edge.getOpposite(walkDir), true);
+				}
+			}
+		}
+		fileStream.write("\"/>\n");
+	}
+	
+	/*
+	 * Every corridor is reached from both of its ends; it is only written 
+	 * from the end with the lower id, or for a loop back to the same vertex
+	 * from the direction with the lower ordinal. Expects walkDir as left by
+	 * the walk from junction to end.
+	 */
+	private boolean isFirstWalk(int junction, Direction dir, int end) {
+		if (end != junction) {
+			return (junction < end);
+		}
+		return (dir.ordinal() < Edge.getOpposite(walkDir).ordinal());
+	}
+	
+	/*
+	 * Follow the corridor leaving junction in direction dir through simple
+	 * bends and straight stretches up to the next vertex with one, three or
+	 * four links. Returns that vertex and leaves the direction it was 
+	 * reached in in walkDir. With print set the corridor is written.
+	 */
+	private int walk(MazeTopology edge, int junction, Direction dir, boolean print) throws IOException {
+		if (print) {
+			printMove(edge.getX(junction), edge.getY(junction));
+		}
+		int v = junction;
+		int length = 0;
+		while (true) {
+			int next = edge.getNeighbor(v, dir);
+			length += (Edge.getOrientation(dir) == Orientation.X_AXIS) ? edge.getX(next) - edge.getX(v) : 
+				                                                          edge.getY(next) - edge.getY(v);
+			v = next;
+			if ((v == junction) || (getDegree(edge, v) != 2)) {
+				break;
+			}
+			Direction back = Edge.getOpposite(dir);
+			for (Direction d : mDirections) {
+				if ((d != back) && (edge.getNeighbor(v, d) >= 0)) {
+					if (d != dir) {
+						if (print) {
+							printLine(dir, length);
+						}
+						length = 0;
+						dir = d;
+					}
+					break;
+				}
+			}
+		}
+		if (print) {
+			printLine(dir, length);
+		}
+		walkDir = dir;
+		return v;
+	}
+	
+	private static int getDegree(MazeTopology edge, int junction) {
+		int degree = 0;
+		for (Direction dir : mDirections) {
+			if (edge.getNeighbor(junction, dir) >= 0) {
+				degree++;
+			}
+		}
+		return degree;
+	}
+	
+	private void printMove(int x, int y) throws IOException {
+		if ((x == penX) && (y == penY)) {
+			return;
+		}
+		fileStream.write('m');
+		printNumber(x - penX);
+		if (y >= penY) {
+			fileStream.write(' ');
+		}
+		printNumber(y - penY);
+		penX = x;
+		penY = y;
+	}
+	
+	private void printLine(Direction dir, int length) throws IOException {
+		if (Edge.getOrientation(dir) == Orientation.X_AXIS) {
+			fileStream.write('h');
+			penX += length;
+		}
+		else {
+			fileStream.write('v');
+			penY += length;
+		}
+		printNumber(length);
+	}
+	
+	/*
+	 * Format value in decimal without creating a String
+	 */
+	private void printNumber(int value) throws IOException {
+		if ((value < 0) && (value != Integer.MIN_VALUE)) {
+			fileStream.write('-');
+			value = -value;
+		}
+		else if (value < 0) {
+			fileStream.write(Integer.toString(value));
+			return;
+		}
+		int start = mDigits.length;
+		do {
+			mDigits[--start] = (char)('0' + value % 10);
+			value /= 10;
+		} while (value != 0);
+		fileStream.write(mDigits, start, mDigits.length - start);
+	}
+	
 	private void print(Bead bead) throws IOException {
 		tabCount++;
 		printTab();
 		fileStream.write("<circle");
-		printAttribute("cx", bead.getCurrentLocation().getX());
-		printAttribute("cy", bead.getCurrentLocation().getY());
+		printAttribute("cx", bead.getX());
+		printAttribute("cy", bead.getY());
 		printAttribute("r", beadRadius);
 		printStyleAttribute("pink", "red", 2);
 		fileStream.write("/>\n");
@@ -163,11 +348,19 @@ public class SVGView {
 	}
 	
 	private void printAttribute(String name, int value) throws IOException {
-		fileStream.write(" " + name + "=\"" + value + "\"");
+		fileStream.write(' ');
+		fileStream.write(name);
+		fileStream.write("=\"");
+		printNumber(value);
+		fileStream.write('"');
 	}
 	
 	private void printAttribute(String name, String value) throws IOException {
-		fileStream.write(" " + name + "=\"" + value + "\"");
+		fileStream.write(' ');
+		fileStream.write(name);
+		fileStream.write("=\"");
+		fileStream.write(value);
+		fileStream.write('"');
 	}
 	
 	private void printStyleAttribute(String stroke, String fill, int strokeWidth, float strokeOpacity) throws IOException {
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2010, 2012, Sonal Santan < sonal DOT santan AT gmail DOT com >
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+
+
+package ss.beadmaze;
+
+import ss.beadmaze.Maze.Direction;
+
+/*
+ * Presents a topology saved for one screen size on another one by scaling
+ * the co-ordinates on access, so that a mapped topology need not be copied
+ */
+class ScaledTopology implements MazeTopology {
+	private final MazeTopology mTopology;
+	private final int mWidth;
+	private final int mHeight;
+	private final int mSourceWidth;
+	private final int mSourceHeight;
+	
+	ScaledTopology(MazeTopology topology, int sourceWidth, int sourceHeight, int width, int height) {
+		mTopology = topology;
+		mSourceWidth = sourceWidth;
+		mSourceHeight = sourceHeight;
+		mWidth = width;
+		mHeight = height;
+	}
+	
+	public int getVertexCount() {
+		return mTopology.getVertexCount();
+	}
+
+	public Vertex getVertex(int id) {
+		return new Vertex(new Location(getX(id), getY(id)), id);
+	}
+
+	public Vertex findVertex(Vertex node, Direction dir) {
+		int id = getNeighbor(node.getIndex(), dir);
+		return (id < 0) ? null : getVertex(id);
+	}
+
+	public int getNeighbor(int id, Direction dir) {
+		return mTopology.getNeighbor(id, dir);
+	}
+
+	public int getX(int id) {
+		return (int)(((long)mTopology.getX(id) * mWidth) / mSourceWidth);
+	}
+
+	public int getY(int id) {
+		return (int)(((long)mTopology.getY(id) * mHeight) / mSourceHeight);
+	}
+}
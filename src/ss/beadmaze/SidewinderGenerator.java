@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2010, 2012, Sonal Santan < sonal DOT santan AT gmail DOT com >
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+
+package ss.beadmaze;
+
+import java.util.Random;
+
+import ss.beadmaze.Maze.Direction;
+
+/*
+ * Sidewinder. Works one row at a time: the top row is a single corridor, 
+ * in every other row runs of cells are linked EAST and each run gets one
+ * passage NORTH from a random cell in the run. Needs no memory beyond the
+ * start of the current run, but the maze has a visible NORTH bias.
+ */
+public class SidewinderGenerator implements MazeGenerator {
+	public void generate(GridMaze grid, Random rand) {
+		int xCount = grid.getXCount();
+		int yCount = grid.getYCount();
+		for (int x = 0; x < xCount - 1; x++) {
+			grid.addLink(grid.getId(x, 0), Direction.EAST);
+		}
+		for (int y = 1; y < yCount; y++) {
+			int runStart = 0;
+			for (int x = 0; x < xCount; x++) {
+				boolean closeRun = (x == xCount - 1) || rand.nextBoolean();
+				if (closeRun) {
+					int cell = runStart + rand.nextInt(x - runStart + 1);
+					grid.addLink(grid.getId(cell, y), Direction.NORTH);
+					runStart = x + 1;
+				}
+				else {
+					grid.addLink(grid.getId(x, y), Direction.EAST);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2010, 2012, Sonal Santan < sonal DOT santan AT gmail DOT com >
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+
+package ss.beadmaze;
+
+import java.util.Arrays;
+
+import ss.beadmaze.Maze.Direction;
+
+/*
+ * Uniform grid over the maze area answering "which vertex or link is at
+ * (x, y)" without scanning every vertex. The bucket size is picked so that
+ * on average a bucket holds about one vertex. Every vertex is filed under
+ * the bucket it lies in and every link under all the buckets its segment
+ * crosses. Buckets are stored in compressed form: a start offset per bucket
+ * into a single array of ids.
+ */
+public class SpatialIndex {
+	private final MazeTopology mTopology;
+	private final int mMinX;
+	private final int mMinY;
+	private final int mBucketSize;
+	private final int mColumns;
+	private final int mRows;
+	private final int mVertexStart[];
+	private final int mVertexIds[];
+	// Links are stored as (id * 2) for the EAST link of vertex id and 
+	// (id * 2 + 1) for its SOUTH link
+	private final int mLinkStart[];
+	private final int mLinkIds[];
+	
+	public SpatialIndex(MazeTopology topology) {
+		mTopology = topology;
+		int count = topology.getVertexCount();
+		int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+		int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+		for (int i = 0; i < count; i++) {
+			minX = Math.min(minX, topology.getX(i));
+			minY = Math.min(minY, topology.getY(i));
+			maxX = Math.max(maxX, topology.getX(i));
+			maxY = Math.max(maxY, topology.getY(i));
+		}
+		if (count == 0) {
+			minX = minY = maxX = maxY = 0;
+		}
+		mMinX = minX;
+		mMinY = minY;
+		long area = (long)(maxX - minX + 1) * (maxY - minY + 1);
+		mBucketSize = (int)Math.max(1, Math.ceil(Math.sqrt((double)area / Math.max(1, count))));
+		mColumns = (maxX - minX) / mBucketSize + 1;
+		mRows = (maxY - minY) / mBucketSize + 1;
+		
+		// Two passes per table: count the entries of each bucket, then fill
+		int bucketCount = mColumns * mRows;
+		mVertexStart = new int[bucketCount + 1];
+		for (int i = 0; i < count; i++) {
+			mVertexStart[getBucket(topology.getX(i), topology.getY(i)) + 1]++;
+		}
+		accumulate(mVertexStart);
+		mVertexIds = new int[count];
+		int fill[] = new int[bucketCount];
+		for (int i = 0; i < count; i++) {
+			int bucket = getBucket(topology.getX(i), topology.getY(i));
+			mVertexIds[mVertexStart[bucket] + fill[bucket]++] = i;
+		}
+		
+		mLinkStart = new int[bucketCount + 1];
+		for (int i = 0; i < count; i++) {
+			for (int link = 2 * i; link <= 2 * i + 1; link++) {
+				int other = getOther(link);
+				if (other < 0) {
+					continue;
+				}
+				int c0 = getColumn(topology.getX(i)), c1 = getColumn(topology.getX(other));
+				int r0 = getRow(topology.getY(i)), r1 = getRow(topology.getY(other));
+				for (int r = r0; r <= r1; r++) {
+					for (int c = c0; c <= c1; c++) {
+						mLinkStart[r * mColumns + c + 1]++;
+					}
+				}
+			}
+		}
+		accumulate(mLinkStart);
+		mLinkIds = new int[mLinkStart[bucketCount]];
+		Arrays.fill(fill, 0);
+		for (int i = 0; i < count; i++) {
+			for (int link = 2 * i; link <= 2 * i + 1; link++) {
+				int other = getOther(link);
+				if (other < 0) {
+					continue;
+				}
+				int c0 = getColumn(topology.getX(i)), c1 = getColumn(topology.getX(other));
+				int r0 = getRow(topology.getY(i)), r1 = getRow(topology.getY(other));
+				for (int r = r0; r <= r1; r++) {
+					for (int c = c0; c <= c1; c++) {
+						int bucket = r * mColumns + c;
+						mLinkIds[mLinkStart[bucket] + fill[bucket]++] = link;
+					}
+				}
+			}
+		}
+	}
+	
+	/*
+	 * Returns the id of the vertex closest to (x, y) or -1 if the maze is empty
+	 */
+	public int findNearestVertex(int x, int y) {
+		int column = clamp(getColumn(x), mColumns);
+		int row = clamp(getRow(y), mRows);
+		int best = -1;
+		long bestDistance = Long.MAX_VALUE;
+		int maxRing = Math.max(mColumns, mRows);
+		for (int ring = 0; ring <= maxRing; ring++) {
+			// Any vertex in this ring or beyond is at least this far away
+			long ringDistance = (long)(ring - 1) * mBucketSize;
+			if ((best >= 0) && (ringDistance > 0) && (ringDistance * ringDistance > bestDistance)) {
+				break;
+			}
+			for (int r = row - ring; r <= row + ring; r++) {
+				if ((r < 0) || (r >= mRows)) {
+					continue;
+				}
+				boolean edgeRow = (r == row - ring) || (r == row + ring);
+				for (int c = column - ring; c <= column + ring; c += (edgeRow ? 1 : 2 * ring)) {
+					if ((c >= 0) && (c < mColumns)) {
+						int bucket = r * mColumns + c;
+						for (int i = mVertexStart[bucket]; i < mVertexStart[bucket + 1]; i++) {
+							long dx = mTopology.getX(mVertexIds[i]) - x;
+							long dy = mTopology.getY(mVertexIds[i]) - y;
+							if (dx * dx + dy * dy < bestDistance) {
+								bestDistance = dx * dx + dy * dy;
+								best = mVertexIds[i];
+							}
+						}
+					}
+					if (ring == 0) {
+						break;
+					}
+				}
+			}
+		}
+		return best;
+	}
+	
+	/*
+	 * Find the link closest to (x, y) within tolerance pixels. On success the
+	 * two end points of the link are copied into link[0] and link[1], with 
+	 * link[0] being the WEST or NORTH end.
+	 */
+	public boolean findLink(int x, int y, int tolerance, int link[]) {
+		int c0 = clamp(getColumn(x - tolerance), mColumns), c1 = clamp(getColumn(x + tolerance), mColumns);
+		int r0 = clamp(getRow(y - tolerance), mRows), r1 = clamp(getRow(y + tolerance), mRows);
+		int best = -1;
+		int bestDistance = tolerance + 1;
+		for (int r = r0; r <= r1; r++) {
+			for (int c = c0; c <= c1; c++) {
+				int bucket = r * mColumns + c;
+				for (int i = mLinkStart[bucket]; i < mLinkStart[bucket + 1]; i++) {
+					int distance = getDistance(mLinkIds[i], x, y);
+					if (distance < bestDistance) {
+						bestDistance = distance;
+						best = mLinkIds[i];
+					}
+				}
+			}
+		}
+		if (best < 0) {
+			return false;
+		}
+		link[0] = best / 2;
+		link[1] = getOther(best);
+		return true;
+	}
+	
+	/*
+	 * Check whether (x, y) lies on the link between vertices v1 and v2, or on 
+	 * vertex v1 itself when v1 == v2
+	 */
+	public static boolean contains(MazeTopology topology, int v1, int v2, int x, int y) {
+		int count = topology.getVertexCount();
+		if ((v1 < 0) || (v1 >= count) || (v2 < 0) || (v2 >= count)) {
+			return false;
+		}
+		int x1 = topology.getX(v1), y1 = topology.getY(v1);
+		int x2 = topology.getX(v2), y2 = topology.getY(v2);
+		Direction dir = Location.getDirection(x1, y1, x2, y2);
+		if (dir == Direction.NONE) {
+			return (v1 == v2) && (x == x1) && (y == y1);
+		}
+		if (topology.getNeighbor(v1, dir) != v2) {
+			return false;
+		}
+		return (x >= Math.min(x1, x2)) && (x <= Math.max(x1, x2)) &&
+		       (y >= Math.min(y1, y2)) && (y <= Math.max(y1, y2));
+	}
+	
+	private int getOther(int link) {
+		return mTopology.getNeighbor(link / 2, ((link & 1) == 0) ? Direction.EAST : Direction.SOUTH);
+	}
+	
+	/*
+	 * Distance of (x, y) from the axis aligned segment of the given link
+	 */
+	private int getDistance(int link, int x, int y) {
+		int id = link / 2;
+		int other = getOther(link);
+		int x0 = mTopology.getX(id), y0 = mTopology.getY(id);
+		int x1 = mTopology.getX(other), y1 = mTopology.getY(other);
+		int dx = (x < x0) ? x0 - x : ((x > x1) ? x - x1 : 0);
+		int dy = (y < y0) ? y0 - y : ((y > y1) ? y - y1 : 0);
+		return Math.max(dx, dy);
+	}
+	
+	private int getColumn(int x) {
+		return (int)Math.floor((double)(x - mMinX) / mBucketSize);
+	}
+	
+	private int getRow(int y) {
+		return (int)Math.floor((double)(y - mMinY) / mBucketSize);
+	}
+	
+	private int getBucket(int x, int y) {
+		return getRow(y) * mColumns + getColumn(x);
+	}
+	
+	private static int clamp(int value, int count) {
+		return Math.max(0, Math.min(count - 1, value));
+	}
+	
+	private static void accumulate(int start[]) {
+		for (int i = 1; i < start.length; i++) {
+			start[i] += start[i - 1];
+		}
+	}
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright (c) 2010, 2012, Sonal Santan < sonal DOT santan AT gmail DOT com >
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+
+package ss.beadmaze;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Random;
+
+/*
+ * Builds mazes far taller than memory allows with Eller's algorithm. Only
+ * the set membership of the current row is kept, so memory is O(width) no
+ * matter how many rows are generated. Finished rows are appended straight
+ * to a row file (see RowMazeReader for the layout).
+ *
+ * Every row draws from its own generator seeded from (seed, row), so the
+ * maze only depends on the seed. Every checkpointInterval rows the row file
+ * is synced and the set membership of the next row is written to a side
+ * file (<file>.ckpt). A later build() of the same file resumes from the 
+ * last checkpoint instead of starting over. An interval which is not 
+ * positive disables checkpoints.
+ */
+public class StreamingMazeBuilder {
+	private static final int mCheckpointMagic = 0x504b4342; // "BCKP"
+	private final String mFile;
+	private final int mXCount;
+	private final int mYCount;
+	private final long mSeed;
+	private final int mRowBytes;
+	
+	// Per row state, all sized mXCount
+	private int mLabels[];
+	private int mNextLabels[];
+	private int mParent[];
+	private int mRemaining[];
+	private int mMap[];
+	private boolean mHasDown[];
+	private byte mRow[];
+	
+	public StreamingMazeBuilder(String file, int xCount, int yCount, long seed) {
+		mFile = file;
+		mXCount = xCount;
+		mYCount = yCount;
+		mSeed = seed;
+		mRowBytes = RowMazeReader.getRowBytes(xCount);
+	}
+	
+	public boolean build(int checkpointInterval) {
+		mLabels = new int[mXCount];
+		mNextLabels = new int[mXCount];
+		mParent = new int[mXCount];
+		mRemaining = new int[mXCount];
+		mMap = new int[mXCount];
+		mHasDown = new boolean[mXCount];
+		mRow = new byte[mRowBytes];
+		try {
+			int row = restoreCheckpoint();
+			if (row < 0) {
+				row = 0;
+				Arrays.fill(mLabels, -1);
+				RandomAccessFile f = new RandomAccessFile(mFile, "rw");
+				try {
+					f.setLength(0);
+					RowMazeReader.writeHeader(f, mXCount, mYCount, mSeed);
+				}
+				finally {
+					f.close();
+				}
+			}
+			else {
+				// Drop anything written after the checkpoint
+				RandomAccessFile f = new RandomAccessFile(mFile, "rw");
+				try {
+					f.setLength(RowMazeReader.getRowOffset(mXCount, row));
+				}
+				finally {
+					f.close();
+				}
+			}
+			
+			FileOutputStream file = new FileOutputStream(mFile, true);
+			BufferedOutputStream stream = new BufferedOutputStream(file, 1 << 16);
+			try {
+				for (; row < mYCount; row++) {
+					generateRow(row);
+					stream.write(mRow);
+					if ((checkpointInterval > 0) && ((row + 1) % checkpointInterval == 0) && (row + 1 < mYCount)) {
+						stream.flush();
+						file.getFD().sync();
+						saveCheckpoint(row + 1);
+					}
+				}
+				stream.flush();
+				file.getFD().sync();
+			}
+			finally {
+				stream.close();
+			}
+			new File(mFile + ".ckpt").delete();
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+		return true;
+	}
+	
+	private void generateRow(int row) {
+		Random rand = new Random(mSeed ^ ((row + 1) * 0x9E3779B97F4A7C15L));
+		boolean lastRow = (row == mYCount - 1);
+		Arrays.fill(mRow, (byte)0);
+		
+		// Cells not linked from the row above start in a set of their own.
+		// Labels are kept compact so that they always fit in [0, mXCount).
+		int labelCount = 0;
+		for (int x = 0; x < mXCount; x++) {
+			labelCount = Math.max(labelCount, mLabels[x] + 1);
+		}
+		for (int x = 0; x < mXCount; x++) {
+			if (mLabels[x] < 0) {
+				mLabels[x] = labelCount++;
+			}
+		}
+		for (int i = 0; i < labelCount; i++) {
+			mParent[i] = i;
+		}
+		
+		// Randomly link neighbors in different sets; the last row must link
+		// all of them
+		for (int x = 0; x < mXCount - 1; x++) {
+			int root1 = find(mLabels[x]);
+			int root2 = find(mLabels[x + 1]);
+			if ((root1 != root2) && (lastRow || rand.nextBoolean())) {
+				mParent[root2] = root1;
+				setBit(2 * x);
+			}
+		}
+		if (lastRow) {
+			return;
+		}
+		
+		// Every set needs at least one passage SOUTH
+		for (int x = 0; x < mXCount; x++) {
+			int root = find(mLabels[x]);
+			mLabels[x] = root;
+			mRemaining[root] = 0;
+			mHasDown[root] = false;
+		}
+		for (int x = 0; x < mXCount; x++) {
+			mRemaining[mLabels[x]]++;
+		}
+		for (int x = 0; x < mXCount; x++) {
+			int root = mLabels[x];
+			mRemaining[root]--;
+			if (rand.nextBoolean() || ((mRemaining[root] == 0) && !mHasDown[root])) {
+				setBit(2 * x + 1);
+				mHasDown[root] = true;
+				mNextLabels[x] = root;
+			}
+			else {
+				mNextLabels[x] = -1;
+			}
+		}
+		
+		// Renumber the surviving sets compactly
+		for (int x = 0; x < mXCount; x++) {
+			if (mNextLabels[x] >= 0) {
+				mMap[mNextLabels[x]] = -1;
+			}
+		}
+		int next = 0;
+		for (int x = 0; x < mXCount; x++) {
+			int root = mNextLabels[x];
+			if (root < 0) {
+				mLabels[x] = -1;
+				continue;
+			}
+			if (mMap[root] < 0) {
+				mMap[root] = next++;
+			}
+			mLabels[x] = mMap[root];
+		}
+	}
+	
+	private int find(int label) {
+		while (mParent[label] != label) {
+			mParent[label] = mParent[mParent[label]];
+			label = mParent[label];
+		}
+		return label;
+	}
+	
+	private void setBit(int bit) {
+		mRow[bit >>> 3] |= (byte)(1 << (bit & 7));
+	}
+	
+	/*
+	 * Returns the next row to generate or -1 if there is no usable checkpoint
+	 */
+	private int restoreCheckpoint() throws IOException {
+		File checkpoint = new File(mFile + ".ckpt");
+		if (!checkpoint.exists()) {
+			return -1;
+		}
+		DataInputStream stream = new DataInputStream(new BufferedInputStream(new FileInputStream(checkpoint)));
+		try {
+			if ((stream.readInt() != mCheckpointMagic) || (stream.readInt() != mXCount) || 
+				(stream.readInt() != mYCount) || (stream.readLong() != mSeed)) {
+				return -1;
+			}
+			int row = stream.readInt();
+			for (int x = 0; x < mXCount; x++) {
+				mLabels[x] = stream.readInt();
+			}
+			if (new File(mFile).length() < RowMazeReader.getRowOffset(mXCount, row)) {
+				return -1;
+			}
+			return row;
+		}
+		finally {
+			stream.close();
+		}
+	}
+	
+	private void saveCheckpoint(int row) throws IOException {
+		File temp = new File(mFile + ".ckpt.tmp");
+		FileOutputStream file = new FileOutputStream(temp);
+		DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(file));
+		try {
+			stream.writeInt(mCheckpointMagic);
+			stream.writeInt(mXCount);
+			stream.writeInt(mYCount);
+			stream.writeLong(mSeed);
+			stream.writeInt(row);
+			for (int x = 0; x < mXCount; x++) {
+				stream.writeInt(mLabels[x]);
+			}
+			stream.flush();
+			file.getFD().sync();
+		}
+		finally {
+			stream.close();
+		}
+		if (!temp.renameTo(new File(mFile + ".ckpt"))) {
+			throw new IOException("Could not replace checkpoint of " + mFile);
+		}
+	}
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2010, 2012, Sonal Santan < sonal DOT santan AT gmail DOT com >
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+
+package ss.beadmaze;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import ss.beadmaze.Maze.Direction;
+
+/*
+ * Parallel generation for large grids. The grid is cut into square tiles
+ * and a spanning tree is generated for every tile concurrently, each with
+ * its own generator instance and a seed drawn up front from the caller's
+ * generator, so the result does not depend on scheduling. The tiles are 
+ * then joined by a random spanning tree over the tile graph, opening one
+ * passage per tree edge, which keeps the maze perfect.
+ *
+ * Tiles write straight into the shared bitset. Two tiles can only touch 
+ * the same 64 bit word if they are neighbors in a row, or sit at the two
+ * ends of a row of tiles, so tiles are run in up to six phases colored by
+ * column and row parity such that no two tiles of a phase share a word.
+ * Only the generation inside a phase runs in parallel; joining is a cheap
+ * sequential pass over the (small) tile graph.
+ */
+public class TiledMazeGenerator implements MazeGenerator {
+	// A word holds 32 cells; tiles at least this wide never share a word
+	// with the tile two columns or rows away
+	private static final int mMinTileSize = 32;
+	private final String mGeneratorName;
+	private final int mTileSize;
+	private final int mThreadCount;
+	
+	public TiledMazeGenerator(String generatorName, int tileSize, int threadCount) {
+		assert(AutoMazeBuilder.createGenerator(generatorName) != null);
+		mGeneratorName = generatorName;
+		mTileSize = Math.max(tileSize, mMinTileSize);
+		mThreadCount = threadCount;
+	}
+	
+	public void generate(final GridMaze grid, Random rand) {
+		// The last column and row of tiles absorb the remainder, so every
+		// tile is at least mTileSize wide and high unless the grid is smaller
+		final int tilesX = Math.max(1, grid.getXCount() / mTileSize);
+		final int tilesY = Math.max(1, grid.getYCount() / mTileSize);
+		final long seeds[] = new long[tilesX * tilesY];
+		for (int i = 0; i < seeds.length; i++) {
+			seeds[i] = rand.nextLong();
+		}
+		
+		if ((seeds.length == 1) || (mThreadCount <= 1)) {
+			for (int i = 0; i < seeds.length; i++) {
+				generateTile(grid, tilesX, tilesY, i % tilesX, i / tilesX, seeds[i]);
+			}
+		}
+		else {
+			ExecutorService pool = Executors.newFixedThreadPool(mThreadCount);
+			try {
+				// The last column gets its own color if it would otherwise
+				// share one with the first column
+				int columnColors = ((tilesX > 1) && ((tilesX & 1) == 1)) ? 3 : 2;
+				for (int phase = 0; phase < 2 * columnColors; phase++) {
+					List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+					for (int i = 0; i < seeds.length; i++) {
+						final int tx = i % tilesX;
+						final int ty = i / tilesX;
+						int columnColor = ((columnColors == 3) && (tx == tilesX - 1)) ? 2 : (tx & 1);
+						if (columnColor + columnColors * (ty & 1) != phase) {
+							continue;
+						}
+						final long seed = seeds[i];
+						tasks.add(new Callable<Object>() {
+							public Object call() {
+								generateTile(grid, tilesX, tilesY, tx, ty, seed);
+								return null;
+							}
+						});
+					}
+					for (Future<Object> f : pool.invokeAll(tasks)) {
+						f.get();
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(e);
+			} catch (ExecutionException e) {
+				throw new IllegalStateException(e.getCause());
+			}
+			finally {
+				pool.shutdown();
+			}
+		}
+		joinTiles(grid, tilesX, tilesY, rand);
+	}
+	
+	private void generateTile(GridMaze grid, int tilesX, int tilesY, int tx, int ty, long seed) {
+		int x0 = tx * mTileSize;
+		int y0 = ty * mTileSize;
+		int w = getTileSize(tx, tilesX, grid.getXCount());
+		int h = getTileSize(ty, tilesY, grid.getYCount());
+		GridMaze tile = new GridMaze(w, h, 0, 0, 0);
+		AutoMazeBuilder.createGenerator(mGeneratorName).generate(tile, new Random(seed));
+		grid.copyLinks(tile, x0, y0);
+	}
+	
+	/*
+	 * Randomized Kruskal over the tile graph. Each accepted tile edge opens
+	 * one passage at a random position of the shared border.
+	 */
+	private void joinTiles(GridMaze grid, int tilesX, int tilesY, Random rand) {
+		int tileCount = tilesX * tilesY;
+		int parent[] = new int[tileCount];
+		for (int i = 0; i < tileCount; i++) {
+			parent[i] = i;
+		}
+		// Border (2 * t) is EAST of tile t, border (2 * t + 1) is SOUTH of it
+		int borders[] = new int[2 * tileCount];
+		int borderCount = 0;
+		for (int t = 0; t < tileCount; t++) {
+			if ((t % tilesX) + 1 < tilesX) {
+				borders[borderCount++] = 2 * t;
+			}
+			if ((t / tilesX) + 1 < tilesY) {
+				borders[borderCount++] = 2 * t + 1;
+			}
+		}
+		for (int i = 0; i < borderCount; i++) {
+			int j = i + rand.nextInt(borderCount - i);
+			int border = borders[j];
+			borders[j] = borders[i];
+			borders[i] = border;
+			
+			int t = border / 2;
+			boolean east = (border & 1) == 0;
+			int root1 = find(parent, t);
+			int root2 = find(parent, east ? t + 1 : t + tilesX);
+			if (root1 == root2) {
+				continue;
+			}
+			parent[root2] = root1;
+			int x0 = (t % tilesX) * mTileSize;
+			int y0 = (t / tilesX) * mTileSize;
+			int w = getTileSize(t % tilesX, tilesX, grid.getXCount());
+			int h = getTileSize(t / tilesX, tilesY, grid.getYCount());
+			if (east) {
+				grid.addLink(grid.getId(x0 + w - 1, y0 + rand.nextInt(h)), Direction.EAST);
+			}
+			else {
+				grid.addLink(grid.getId(x0 + rand.nextInt(w), y0 + h - 1), Direction.SOUTH);
+			}
+		}
+	}
+	
+	private int getTileSize(int index, int tileCount, int cellCount) {
+		return (index == tileCount - 1) ? cellCount - index * mTileSize : mTileSize;
+	}
+	
+	private static int find(int parent[], int id) {
+		while (parent[id] != id) {
+			parent[id] = parent[parent[id]];
+			id = parent[id];
+		}
+		return id;
+	}
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2010, 2012, Sonal Santan < sonal DOT santan AT gmail DOT com >
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+
+package ss.beadmaze;
+
+import java.util.Random;
+
+import ss.beadmaze.Maze.Direction;
+
+/*
+ * Wilson's algorithm. Loop erased random walks from every cell not yet in
+ * the maze until they hit the maze. Produces a uniformly random spanning
+ * tree, i.e. a maze without any directional bias, at the cost of long
+ * walks early on. Only one byte is kept per cell: the last direction the 
+ * walk left it by, which implicitly erases loops.
+ */
+public class WilsonGenerator implements MazeGenerator {
+	private static final Direction mDirections[] = {Direction.EAST, Direction.WEST, Direction.NORTH, Direction.SOUTH};
+	private static final byte mInMaze = -1;
+	private static final byte mUnvisited = -2;
+	
+	public void generate(GridMaze grid, Random rand) {
+		int count = grid.getVertexCount();
+		byte exit[] = new byte[count];
+		for (int i = 0; i < count; i++) {
+			exit[i] = mUnvisited;
+		}
+		exit[rand.nextInt(count)] = mInMaze;
+		
+		for (int start = 0; start < count; start++) {
+			if (exit[start] == mInMaze) {
+				continue;
+			}
+			// Random walk until the maze is hit. Revisiting a cell overwrites
+			// its exit, which erases the loop.
+			int id = start;
+			while (exit[id] != mInMaze) {
+				int dir;
+				int next;
+				do {
+					dir = rand.nextInt(mDirections.length);
+					next = grid.getAdjacent(id, mDirections[dir]);
+				} while (next < 0);
+				exit[id] = (byte)dir;
+				id = next;
+			}
+			// Add the loop erased path to the maze
+			id = start;
+			while (exit[id] != mInMaze) {
+				Direction dir = mDirections[exit[id]];
+				grid.addLink(id, dir);
+				exit[id] = mInMaze;
+				id = grid.getAdjacent(id, dir);
+			}
+		}
+	}
+}
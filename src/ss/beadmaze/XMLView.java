@@ -19,101 +19,203 @@
 
 
 package ss.beadmaze;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.util.EnumSet;
+import java.io.OutputStream;
 
 import ss.beadmaze.Maze.Direction;
 
+/*
+ * Writes a maze as XML for MazeBuilder. Output is streamed through one 
+ * reused byte buffer: markup is ASCII so it is copied byte by byte and 
+ * numbers are formatted straight into the buffer, so no String is built 
+ * per attribute and memory stays constant whatever the maze size.
+ */
 public class XMLView {
+	private static final Direction mDirections[] = {Direction.EAST, Direction.WEST, Direction.NORTH, Direction.SOUTH};
+	private static final byte mDirectionNames[][] = {ascii(" EAST=\""), ascii(" WEST=\""), ascii(" NORTH=\""), ascii(" SOUTH=\"")};
+	private static final byte mVertexStart[] = ascii("<vertex id=\"");
+	private static final byte mLocStart[] = ascii(" loc=\"");
+	private static final byte mLocSeparator[] = ascii(", ");
+	private static final byte mElementEnd[] = ascii("/>\n");
+	private static final byte mTab[] = ascii("    ");
+	private static final int mBufferSize = 1 << 16;
+	// Longest number written: "-2147483648"
+	private static final int mMaxDigits = 11;
 	private Maze maze = null;
 	private int tabCount = 0;
-	private PrintWriter fileStream = null;
+	private OutputStream fileStream = null;
+	private byte mBuffer[] = null;
+	private int mLength = 0;
 	
 	public XMLView(Maze m) {
 		maze = m;
 	}
 	
-	public boolean print(FileOutputStream f) {
-	 	try {
-	 		fileStream = new PrintWriter(f);
-			print(maze);
-			fileStream.close();
+	public boolean print(OutputStream f) {
+		fileStream = f;
+		mBuffer = new byte[mBufferSize];
+		mLength = 0;
+		try {
+			try {
+				print(maze);
+				flush();
+			}
+			finally {
+				fileStream.close();
+			}
 		} catch (IOException e) {
 			return false;
+		} finally {
+			fileStream = null;
+			mBuffer = null;
 		}
 		return true;
 	}
 	
 	private void print(Maze maze) throws IOException {
 		printTab(); 
-		fileStream.write("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n");
-		fileStream.write("<maze");
-		printAttribute("vertexcount", maze.getEdge().getVertexCount());
+		write("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n");
+		write("<maze");
+		printAttribute("vertexcount", maze.getTopology().getVertexCount());
 		printAttribute("width", maze.getWidth());
 		printAttribute("height", maze.getHeight());
 		printAttribute("start", maze.getStartVertex().getIndex());
 		printAttribute("end", maze.getEndVertex().getIndex());
-		fileStream.write(">\n");	
-		print(maze.getEdge());
+		write(">\n");	
+		print(maze.getTopology());
 		print(maze.getBead());
 		printTab();
-		fileStream.write("</maze>\n");
+		write("</maze>\n");
 	}
-	// nandita 452-1471
-	private void print(Vertex junction) throws IOException {
+
+	private void print(MazeTopology edge, int junction) throws IOException {
 		tabCount++;
 		printTab();
-		fileStream.write("<vertex");
-		printAttribute("id", junction.getIndex());
-		print(junction.getLocation());
-		printLinks(maze.getEdge(), junction);	
-		fileStream.write("/>\n");
+		write(mVertexStart);
+		printNumber(junction);
+		write('"');
+		print(edge.getX(junction), edge.getY(junction));
+		printLinks(edge, junction);	
+		write(mElementEnd);
 		tabCount--;
 	}
 	
-	private void print(Edge edge) throws IOException {
+	private void print(MazeTopology edge) throws IOException {
 		int vertexCount = edge.getVertexCount();
 		for (int i = 0; i< vertexCount; i++) {
-			print(edge.getVertex(i));
+			print(edge, i);
 		}
 	}
 	
-	private void printLinks(Edge edge, Vertex ver) throws IOException {
-		tabCount++;
-		for (Direction dir : EnumSet.range(Direction.EAST, Direction.NONE)) {
-			Vertex v = edge.findVertex(ver, dir);
-			if (v == null) {
+	/*
+	 * One neighbor lookup per direction; NONE never has a neighbor
+	 */
+	private void printLinks(MazeTopology edge, int ver) throws IOException {
+		for (int i = 0; i < mDirections.length; i++) {
+			int v = edge.getNeighbor(ver, mDirections[i]);
+			if (v < 0) {
 				continue;
 			}
-			printAttribute(dir.toString(), v.getIndex());
+			write(mDirectionNames[i]);
+			printNumber(v);
+			write('"');
 		}
-		tabCount--;
 	}
 	
 	private void print(Bead bead) throws IOException {
 		tabCount++;
 		printTab();
-		fileStream.write("<bead ");
-		print(bead.getCurrentLocation());
-		printAttribute("v1", bead.getVertex1().getIndex());
-		printAttribute("v2", bead.getVertex2().getIndex());
-		fileStream.write("/>\n");
+		write("<bead");
+		print(bead.getX(), bead.getY());
+		printAttribute("v1", bead.getVertexId1());
+		printAttribute("v2", bead.getVertexId2());
+		write(mElementEnd);
 		tabCount--;
 	}
 	
 	private void printTab() throws IOException {
 		for (int i=0; i<tabCount; i++) {
-			fileStream.write("    ");
+			write(mTab);
 		}
 	}
 	
-	private void print(Location loc) throws IOException {
-		fileStream.write("loc=\"" + loc.getX() + ", " + loc.getY() + "\"");
+	private void print(int x, int y) throws IOException {
+		write(mLocStart);
+		printNumber(x);
+		write(mLocSeparator);
+		printNumber(y);
+		write('"');
 	}
 	
 	private void printAttribute(String name, int value) throws IOException {
-		fileStream.write(" " + name + "=\"" + value + "\"");
+		write(' ');
+		write(name);
+		write("=\"");
+		printNumber(value);
+		write('"');
+	}
+	
+	/*
+	 * Format value in decimal directly into the buffer
+	 */
+	private void printNumber(int value) throws IOException {
+		if (mLength + mMaxDigits > mBuffer.length) {
+			flush();
+		}
+		if (value < 0) {
+			if (value == Integer.MIN_VALUE) {
+				write(Integer.toString(value));
+				return;
+			}
+			mBuffer[mLength++] = '-';
+			value = -value;
+		}
+		int digits = 1;
+		for (int v = value; v >= 10; v /= 10) {
+			digits++;
+		}
+		int end = mLength + digits;
+		for (int i = end - 1; i >= mLength; i--) {
+			mBuffer[i] = (byte)('0' + value % 10);
+			value /= 10;
+		}
+		mLength = end;
+	}
+	
+	private void write(char c) throws IOException {
+		if (mLength == mBuffer.length) {
+			flush();
+		}
+		mBuffer[mLength++] = (byte)c;
+	}
+	
+	private void write(byte bytes[]) throws IOException {
+		if (mLength + bytes.length > mBuffer.length) {
+			flush();
+		}
+		System.arraycopy(bytes, 0, mBuffer, mLength, bytes.length);
+		mLength += bytes.length;
+	}
+	
+	/*
+	 * Only for the few ASCII strings written once per file
+	 */
+	private void write(String str) throws IOException {
+		for (int i = 0; i < str.length(); i++) {
+			write(str.charAt(i));
+		}
+	}
+	
+	private void flush() throws IOException {
+		fileStream.write(mBuffer, 0, mLength);
+		mLength = 0;
+	}
+	
+	private static byte[] ascii(String str) {
+		byte bytes[] = new byte[str.length()];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte)str.charAt(i);
+		}
+		return bytes;
 	}
 }
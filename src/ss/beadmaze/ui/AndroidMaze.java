@@ -223,6 +223,12 @@ public class AndroidMaze extends Activity {
         mView.pause(); // pause game when Activity pauses
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mView.destroy();
+    }
+
     @Override
     protected void onResume() {
         super.onResume();
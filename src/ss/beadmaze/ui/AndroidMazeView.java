@@ -19,9 +19,9 @@
 
 package ss.beadmaze.ui;
 
-import java.io.FileInputStream;
+import java.io.BufferedInputStream;
+import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -103,12 +103,32 @@ class AndroidMazeView extends SurfaceView implements SurfaceHolder.Callback {
 	private static final String mRunningTotalTimeKey = "mRunningTotalTimeKey";
 	private static final String mBlindKey = "mBlindKey";
 	private static final String mBackGroundColorIndexKey = "mBackGroundColorIndexKey";
-	private static final String mazeDumpFile = "mazedump.xml";
+	private static final String mRegionMazeKey = "mRegionMazeKey";
+	private static final String mazeDumpFile = "mazedump";
+	private static final String mazeMapFile = "mazedump.map";
+	private static final String mazeRegionFile = "mazeregions";
+	private static final long mRegionBudget = 1024 * 1024;
+	private static final String playJournalFile = "playjournal";
+	private static final int mJournalBufferSize = 8 * 1024;
+	private static final long mJournalMaxLength = 1024 * 1024;
 	private long mRunningTotalTime = 0;
 	private long mLastTimeStamp = 0;
 	
 	private Maze mMaze = null;
+	/** Whether mMaze reads its regions from mazeRegionFile as they are reached */
+	private boolean mRegionMaze = false;
 	private Bitmap mBackgroundImage = null;
+	/** Part of the maze mBackgroundImage shows, all of it unless the maze is larger than the screen */
+	private int mViewX = 0;
+	private int mViewY = 0;
+	private int mViewWidth = 0;
+	private int mViewHeight = 0;
+	/** Builds the next level in the background while the current one is played */
+	private final LevelPrefetcher mPrefetcher = new LevelPrefetcher();
+	/** Records every input and bead move for replay with JournalReplayer */
+	private PlayJournal mJournal = null;
+	/** Parsed levels.xml, see getLevelConfig() */
+	private LevelConfig mLevelConfig = null;
 	private boolean mSpotlightMode = false;
 	private Direction mPreviousDir = Direction.ERROR;
 	private Direction mCurrentDir = Direction.ERROR;
@@ -121,9 +141,15 @@ class AndroidMazeView extends SurfaceView implements SurfaceHolder.Callback {
 	class AndroidMazeThread extends Thread {
         /** Handle to the surface manager object we interact with */
 		private SurfaceHolder mSurfaceHolder;
+		/** Drawing objects reused across frames so that rendering does not allocate */
+		private final Paint mBeadBrush = new Paint();
+		private final Paint mOverlayBrush = new Paint();
+		private final Path mSpotlightPath = new Path();
 		public AndroidMazeThread(SurfaceHolder surfaceHolder) {
 			// get handles to some important objects
 			mSurfaceHolder = surfaceHolder;
+			mBeadBrush.setAntiAlias(true);
+			mOverlayBrush.setAntiAlias(true);
 		}
 
 		/**
@@ -197,13 +223,30 @@ class AndroidMazeView extends SurfaceView implements SurfaceHolder.Callback {
 						case STATE_RESET:
 						{ 
 							mLevel++;
-							if (!buildMazeAuto()) {
-								mRun = false;
-								mMessageChannel.sendEmptyMessage(mMessageChannelGameOverId);
-								break;
+							// Normally the level has already been built in the 
+							// background while the previous one was played
+							LevelPrefetcher.Level next = mPrefetcher.take(mLevel);
+							if (next != null) {
+								setMaze(next.getMaze(), false);
+								// Generated levels fit the screen and are rendered whole
+								mBackgroundImage = next.getBackground();
+								mViewX = 0;
+								mViewY = 0;
+								mViewWidth = mMaze.getWidth();
+								mViewHeight = mMaze.getHeight();
+								mBackGroundColorIndex = next.getColorIndex();
 							}
-							createStaticMazeImageNew(null);
+							else {
+								if (!buildMazeAuto()) {
+									mRun = false;
+									mMessageChannel.sendEmptyMessage(mMessageChannelGameOverId);
+									break;
+								}
+								createStaticMazeImageNew(null);
+							}
+							prefetchNextLevel();
 							mMaze.resetBead();
+							recordStart();
 							doDraw();
 							mSurfaceHolder.wait();
 							setState(ThreadState.STATE_READY);
@@ -212,6 +255,7 @@ class AndroidMazeView extends SurfaceView implements SurfaceHolder.Callback {
 						case STATE_READY:
 						{ 
 							mMaze.resetBead();
+							recordStart();
 							doDraw();
 							sendLevelOverMessage = false;
 							mSurfaceHolder.wait();
@@ -260,17 +304,18 @@ class AndroidMazeView extends SurfaceView implements SurfaceHolder.Callback {
 		 * @return Bundle with this view's state
 		 */
 		public boolean saveState(Bundle savedInstanceState) {
+			Maze source = null;
+			Maze snapshot = null;
 			synchronized (mSurfaceHolder) {
-				FileOutputStream stream;
-				try {
-					stream = AndroidMazeView.this.getContext().openFileOutput(mazeDumpFile, 
-													                          android.content.Context.MODE_PRIVATE);
-				} catch (FileNotFoundException e) {
-					return false;
-				}
-				if (!mMaze.saveState(savedInstanceState, stream)) {
-					return false;
+				// A generated maze is rebuilt from its seed on restore, only
+				// other mazes have to be written to a file. That is done off
+				// this thread from a snapshot so the game loop is not held up.
+				// A region maze is opened from its file again instead
+				if (!mMaze.saveState(savedInstanceState) && !mRegionMaze) {
+					source = mMaze;
+					snapshot = mMaze.snapshot();
 				}
+				savedInstanceState.putBoolean(mRegionMazeKey, mRegionMaze);
 				savedInstanceState.putString(mStateKey, mState.toString());
 				savedInstanceState.putString(currentDirKey, mCurrentDir.toString());
 				mRunningTotalTime += (System.currentTimeMillis() - mLastTimeStamp);
@@ -280,8 +325,15 @@ class AndroidMazeView extends SurfaceView implements SurfaceHolder.Callback {
 				savedInstanceState.putInt(mLevelKey, mLevel);
 				savedInstanceState.putInt(mBackGroundColorIndexKey, mBackGroundColorIndex);
 				mSurfaceHolder.notifyAll();
-				return true;
 			}
+			if (snapshot != null) {
+				Context context = AndroidMazeView.this.getContext();
+				MazeSaver.getInstance().save(source, snapshot, 
+						                     context.getFileStreamPath(mazeMapFile).getPath(),
+						                     context.getFileStreamPath(mazeDumpFile).getPath());
+			}
+			mJournal.flush();
+			return true;
 		}
 
 
@@ -358,47 +410,48 @@ class AndroidMazeView extends SurfaceView implements SurfaceHolder.Callback {
 		}
 
 		boolean computeFrame(Canvas can) {
+			// Everything is drawn in maze co-ordinates, shifted to the view
+			can.save();
+			can.translate(-mViewX, -mViewY);
 			drawMaze(can);
 			drawBead(can);   
 			if (mSpotlightMode) 
 				drawOverlay(can);	
+			can.restore();
 			return true;
 		}
 
 		private void drawMaze(Canvas can) {
-			can.drawBitmap(mBackgroundImage, 0, 0, null);
+			can.drawBitmap(mBackgroundImage, mViewX, mViewY, null);
 		}
 
 		private void drawBead(Canvas can) {
 			// Draw the filled liquid
-			Paint g = new Paint();
-			g.setAntiAlias(true);
-			g.setColor(mBeadInner); //Color.rgb(92, 51, 23));
-			can.drawCircle(mMaze.getBeadLocation().getX(), mMaze.getBeadLocation().getY(), 
-					mBeadRadius1, g);
-			can.drawCircle(mMaze.getBeadLocation().getX(), mMaze.getBeadLocation().getY(), 
-					mBeadRadius1 - 1, g);
-			g.setColor(mBeadOuter);
-			g.setStyle(Paint.Style.FILL);
-			can.drawCircle(mMaze.getBeadLocation().getX(), mMaze.getBeadLocation().getY(), 
-					mBeadRadius1 - 2, g);
+			int x = mMaze.getBeadX();
+			int y = mMaze.getBeadY();
+			mBeadBrush.setStyle(Paint.Style.FILL);
+			mBeadBrush.setColor(mBeadInner); //Color.rgb(92, 51, 23));
+			can.drawCircle(x, y, mBeadRadius1, mBeadBrush);
+			can.drawCircle(x, y, mBeadRadius1 - 1, mBeadBrush);
+			mBeadBrush.setColor(mBeadOuter);
+			can.drawCircle(x, y, mBeadRadius1 - 2, mBeadBrush);
 		}
 
 		private void drawOverlay(Canvas can) {
-			Path path = new Path();
-			path.addCircle(mMaze.getBeadLocation().getX(), mMaze.getBeadLocation().getY(), 
-					       mSpotlightClipRadius, Path.Direction.CW);
-			can.clipPath(path, Region.Op.XOR);
-			Paint g = new Paint();
-			g.setAntiAlias(true);
-			g.setAlpha(220);
-			can.drawRect(0, 0, mMaze.getWidth(), mMaze.getHeight(), g);
+			int x = mMaze.getBeadX();
+			int y = mMaze.getBeadY();
+			mSpotlightPath.reset();
+			mSpotlightPath.addCircle(x, y, mSpotlightClipRadius, Path.Direction.CW);
+			can.clipPath(mSpotlightPath, Region.Op.XOR);
+			mOverlayBrush.setStyle(Paint.Style.FILL);
+			mOverlayBrush.setColor(Color.BLACK);
+			mOverlayBrush.setAlpha(220);
+			can.drawRect(0, 0, mMaze.getWidth(), mMaze.getHeight(), mOverlayBrush);
 			can.clipRect(0, 0, mMaze.getWidth(), mMaze.getHeight(), Region.Op.REPLACE);
-			g.setStyle(Paint.Style.STROKE);
-			g.setAlpha(0);
-			g.setColor(Color.WHITE);
-			can.drawCircle(mMaze.getBeadLocation().getX(), mMaze.getBeadLocation().getY(), 
-						   mSpotlightClipRadius, g);
+			mOverlayBrush.setStyle(Paint.Style.STROKE);
+			mOverlayBrush.setAlpha(0);
+			mOverlayBrush.setColor(Color.WHITE);
+			can.drawCircle(x, y, mSpotlightClipRadius, mOverlayBrush);
 		}
 		
 		/**
@@ -406,6 +459,7 @@ class AndroidMazeView extends SurfaceView implements SurfaceHolder.Callback {
 		 * Canvas.
 		 */
 		private boolean doDraw() {
+			followBead();
 			boolean result = false;
 			Canvas c = mSurfaceHolder.lockCanvas(null);
 			if (c != null) 	{
@@ -415,6 +469,22 @@ class AndroidMazeView extends SurfaceView implements SurfaceHolder.Callback {
 			return result;
 		}
 
+		/*
+		 * Move the view along once the bead gets within a quarter of the 
+		 * view of its edge, unless the view is at the edge of the maze. A
+		 * maze which fits the screen is always shown whole.
+		 */
+		private void followBead() {
+			int x = mMaze.getBeadX();
+			int y = mMaze.getBeadY();
+			if (((x < mViewX + mViewWidth / 4) && (mViewX > 0)) ||
+				((x > mViewX + mViewWidth - mViewWidth / 4) && (mViewX + mViewWidth < mMaze.getWidth())) ||
+				((y < mViewY + mViewHeight / 4) && (mViewY > 0)) ||
+				((y > mViewY + mViewHeight - mViewHeight / 4) && (mViewY + mViewHeight < mMaze.getHeight()))) {
+				renderView();
+			}
+		}
+
 		/**
 		 * Figures the lander state (x, y, fuel, ...) based on the passage of
 		 * real-time. Does not invalidate(). Called at the start of draw().
@@ -446,6 +516,7 @@ class AndroidMazeView extends SurfaceView implements SurfaceHolder.Callback {
 				break;	
 			}
 			int result = mMaze.moveBead(distance, orientation);
+			mJournal.recordMove(distance, orientation, result, mMaze);
 			if (mCurrentDir == mPreviousDir)
 				return result;
 			if (result == 0)
@@ -502,6 +573,7 @@ class AndroidMazeView extends SurfaceView implements SurfaceHolder.Callback {
 					}
 				}
 				mCurrentSpeed = (int)(speed * mFixedSpeed);
+				mJournal.recordKey(true, keyCode, mCurrentDir, mCurrentSpeed);
 				mSurfaceHolder.notifyAll();
 				return result;	
 			}
@@ -550,6 +622,7 @@ class AndroidMazeView extends SurfaceView implements SurfaceHolder.Callback {
 						mCurrentSpeed = mFixedSpeed;
 					}
 				}
+				mJournal.recordKey(false, keyCode, mCurrentDir, mCurrentSpeed);
 				mSurfaceHolder.notifyAll();
 				return handled; 
 			}
@@ -567,8 +640,10 @@ class AndroidMazeView extends SurfaceView implements SurfaceHolder.Callback {
             public void handleMessage(Message m) {
 				if (m.what == mMessageChannelLevelOverId)
 					showLevelOverDialog();
-				else if (m.what == mMessageChannelGameOverId)
+				else if (m.what == mMessageChannelGameOverId) {
+					destroy();
 					((Activity)getContext()).finish();
+				}
             }
 		};	
 		mToneGen = new ToneGenerator(AudioManager.STREAM_MUSIC,ToneGenerator.MAX_VOLUME/2);
@@ -691,6 +766,7 @@ class AndroidMazeView extends SurfaceView implements SurfaceHolder.Callback {
 		// it might touch the Surface after we return and explode
 		mThread.end();
 		mThread = null;
+		mJournal.flush();
 	}
 
 	public void pause() {
@@ -698,13 +774,36 @@ class AndroidMazeView extends SurfaceView implements SurfaceHolder.Callback {
 			return;
 		mThread.pause();
 	}
+	
+	/*
+	 * Release what outlives the surface. Called when the Activity is 
+	 * destroyed, including when it is recreated on rotation, and at game
+	 * over. Calling it again does nothing.
+	 */
+	public void destroy() {
+		mPrefetcher.shutdown();
+		mJournal.close();
+		if (mRegionMaze) {
+			mMaze.close();
+			mRegionMaze = false;
+		}
+	}
 
 	private void init(Bundle savedInstanceState) {
+		if (mJournal != null) {
+			mJournal.close();
+		}
+		DisplayMetrics dm = getDisplayMetrics();
+		mJournal = new PlayJournal(getContext().getFileStreamPath(playJournalFile).getPath(), 
+				                   mJournalBufferSize, mJournalMaxLength, MazeSaver.getInstance().getExecutor(),
+				                   dm.widthPixels, dm.heightPixels, mPathStride);
 		if (savedInstanceState == null) { 
 			mLevel = 1;
 			mState = ThreadState.STATE_READY;
 			mRunningTotalTime = 0;
-			buildMazeAuto();
+			if (!openRegionMaze()) {
+				buildMazeAuto();
+			}
 			mMaze.resetBead();
 		}
 		else {
@@ -714,11 +813,22 @@ class AndroidMazeView extends SurfaceView implements SurfaceHolder.Callback {
 			mRunningTotalTime = savedInstanceState.getLong(mRunningTotalTimeKey);
 			mSpotlightMode = savedInstanceState.getBoolean(mBlindKey);
 			mLastTimeStamp = System.currentTimeMillis();
-			restoreMaze();
+			// A region maze is not saved, it is opened from its file again
+			if (!savedInstanceState.getBoolean(mRegionMazeKey) || !openRegionMaze()) {
+				if (savedInstanceState.containsKey(Maze.mazeSeedKey)) {
+					buildMazeAuto(savedInstanceState.getInt(Maze.mazeLevelKey), 
+							      savedInstanceState.getLong(Maze.mazeSeedKey));
+				}
+				else {
+					restoreMaze();
+				}
+			}
 			mMaze.restoreState(savedInstanceState);
 			mLastTimeStamp = System.currentTimeMillis();
 		}
+		recordStart();
 		createStaticMazeImageNew(savedInstanceState);
+		prefetchNextLevel();
 	}
 	
 	public void saveState(Bundle savedInstanceState) {
@@ -727,93 +837,124 @@ class AndroidMazeView extends SurfaceView implements SurfaceHolder.Callback {
 		mThread.saveState(savedInstanceState);
 	}
 
-	private void printLinks(Vertex junction, Direction dir, Paint brush, Canvas backgroundCanvas) {
-		Vertex v = mMaze.findVertex(junction, dir);	
-		if (v == null) {
+	private void printLinks(Maze maze, int junction, Direction dir, Paint brush, Canvas backgroundCanvas) {
+		int v = maze.getNeighbor(junction, dir);	
+		if (v < 0) {
 			return;
 		}	
-		int x0 = junction.getLocation().getX();
-		int y0 = junction.getLocation().getY();
+		int x0 = maze.getVertexX(junction);
+		int y0 = maze.getVertexY(junction);
 		int x1, y1;
 	
 		if (dir == Direction.EAST) {
 			x0 -= mPathStride;
-			x1 = v.getLocation().getX() + mPathStride;
+			x1 = maze.getVertexX(v) + mPathStride;
 			y1 = y0;
 		}
 		else {
 			y0 -= mPathStride;
-			y1 = v.getLocation().getY() + mPathStride;
+			y1 = maze.getVertexY(v) + mPathStride;
 			x1 = x0;
 			assert(dir == Direction.SOUTH);
 		}
 		backgroundCanvas.drawLine(x0, y0, x1, y1, brush); 		
 	}
 
-	private void printLinks(Vertex junction, Paint brush, Canvas backgroundCanvas) {
-		printLinks(junction, Direction.EAST, brush, backgroundCanvas);
-		printLinks(junction, Direction.SOUTH, brush, backgroundCanvas);
+	private void printLinks(Maze maze, int junction, Paint brush, Canvas backgroundCanvas) {
+		printLinks(maze, junction, Direction.EAST, brush, backgroundCanvas);
+		printLinks(maze, junction, Direction.SOUTH, brush, backgroundCanvas);
+	}
+	
+	private int scaleColor(int c, int level) {
+		return Color.rgb(Color.red(c) + (50 * level) / (mLevelMax - 1), 
+				         Color.green(c) + (50 * level) / (mLevelMax - 1), 
+				         Color.blue(c) + (50 * level) / (mLevelMax - 1));
 	}
 	
-	private int scaleColor(int c) {
-		return Color.rgb(Color.red(c) + (50 * mLevel) / (mLevelMax - 1), 
-				         Color.green(c) + (50 * mLevel) / (mLevelMax - 1), 
-				         Color.blue(c) + (50 * mLevel) / (mLevelMax - 1));
+	private static int getNextColorIndex(int colorIndex, int colorCount) {
+		return (colorIndex + 1 == colorCount) ? 0 : colorIndex + 1;
 	}
 	
 	private void createStaticMazeImageNew(Bundle savedInstanceState)
 	{   
-		mBackgroundImage = Bitmap.createBitmap(mMaze.getWidth(), mMaze.getHeight(), Bitmap.Config.ARGB_8888);
-		Canvas backgroundCanvas = new Canvas(mBackgroundImage);
 		if (savedInstanceState != null)
 			mBackGroundColorIndex = savedInstanceState.getInt(mBackGroundColorIndexKey);
 		else {
-			mBackGroundColorIndex++;	
-			if (mBackGroundColorIndex == mColors.length) {
-				mBackGroundColorIndex = 0;
-			}			
+			mBackGroundColorIndex = getNextColorIndex(mBackGroundColorIndex, mColors.length);	
 		}
+		renderView();
+	}
+	
+	/*
+	 * Render the part of mMaze around the bead which fits the screen
+	 */
+	private void renderView() {
+		DisplayMetrics dm = getDisplayMetrics();
+		mViewWidth = Math.min(mMaze.getWidth(), dm.widthPixels);
+		mViewHeight = Math.min(mMaze.getHeight(), dm.heightPixels);
+		mViewX = Math.max(0, Math.min(mMaze.getBeadX() - mViewWidth / 2, mMaze.getWidth() - mViewWidth));
+		mViewY = Math.max(0, Math.min(mMaze.getBeadY() - mViewHeight / 2, mMaze.getHeight() - mViewHeight));
+		mBackgroundImage = createStaticMazeImage(mMaze, mLevel, mBackGroundColorIndex, 
+				                                 mViewX, mViewY, mViewWidth, mViewHeight);
+	}
+	
+	private Bitmap createStaticMazeImage(Maze maze, int level, int colorIndex) {
+		return createStaticMazeImage(maze, level, colorIndex, 0, 0, maze.getWidth(), maze.getHeight());
+	}
+	
+	/*
+	 * Render the static background of the part of maze at (x, y) of size
+	 * w x h. Only the vertices around that part are visited, so a region
+	 * maze only reads the regions under it. Only touches its arguments and
+	 * constants so it is safe to call from the prefetch thread.
+	 */
+	private Bitmap createStaticMazeImage(Maze maze, int level, int colorIndex, int x, int y, int w, int h)
+	{   
+		Bitmap image = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
+		Canvas backgroundCanvas = new Canvas(image);
+		// Draw in maze co-ordinates
+		backgroundCanvas.translate(-x, -y);
 		
 		int colors[] = new int[mColors.length + 1];
-		for (int i = mBackGroundColorIndex; i < mColors.length; i++) {
+		for (int i = colorIndex; i < mColors.length; i++) {
 			// Brighten the color as the level increases so that screen remains bright
 			// as the maze walls thin
-				colors[i - mBackGroundColorIndex] = scaleColor(mColors[i]);
+				colors[i - colorIndex] = scaleColor(mColors[i], level);
 		}
 		
-		for (int i = 0; i < mBackGroundColorIndex; i++) {
+		for (int i = 0; i < colorIndex; i++) {
 			// Brighten the color as the level increases so that screen remains bright
 			// as the maze walls thin
-			colors[mColors.length - mBackGroundColorIndex + i] = scaleColor(mColors[i]);
+			colors[mColors.length - colorIndex + i] = scaleColor(mColors[i], level);
 		}
 		
 		colors[mColors.length] = colors[0];
 		
-		SweepGradient bg = new SweepGradient(mMaze.getEndVertex().getLocation().getX(), mMaze.getEndVertex().getLocation().getY(), colors, null);
+		SweepGradient bg = new SweepGradient(maze.getEndVertex().getLocation().getX(), maze.getEndVertex().getLocation().getY(), colors, null);
 		
 		Paint brush = new Paint();
 		brush.setShader(bg);
-		backgroundCanvas.drawRect(0, 0, mMaze.getWidth(), mMaze.getHeight(), brush);
+		backgroundCanvas.drawRect(x, y, x + w, y + h, brush);
 		
 		brush = new Paint();
 		brush.setColor(Color.BLACK);
 		brush.setStyle(Paint.Style.FILL);
 		brush.setStrokeWidth(mPathStride * 2);
 		brush.setAntiAlias(true);
-		int vertexCount = mMaze.getVertexCount();
-		for (int i = 0; i< vertexCount; i++) {
-			printLinks(mMaze.getVertex(i), brush, backgroundCanvas);
+		int vertices[] = maze.getVerticesNear(x, y, x + w, y + h);
+		for (int i = 0; i < vertices.length; i++) {
+			printLinks(maze, vertices[i], brush, backgroundCanvas);
 		} 
 		
-		Rect endRect = new Rect((mMaze.getEndVertex().getLocation().getX() - mPathStride), 
-				                (mMaze.getEndVertex().getLocation().getY() - mPathStride), 
-				                (mMaze.getEndVertex().getLocation().getX() + mPathStride), 
-				                (mMaze.getEndVertex().getLocation().getY() + mPathStride));
+		Rect endRect = new Rect((maze.getEndVertex().getLocation().getX() - mPathStride), 
+				                (maze.getEndVertex().getLocation().getY() - mPathStride), 
+				                (maze.getEndVertex().getLocation().getX() + mPathStride), 
+				                (maze.getEndVertex().getLocation().getY() + mPathStride));
 		
-		Rect startRect = new Rect((mMaze.getStartVertex().getLocation().getX() - mPathStride), 
-		 		                  (mMaze.getStartVertex().getLocation().getY() - mPathStride), 
-                                  (mMaze.getStartVertex().getLocation().getX() + mPathStride), 
-                                  (mMaze.getStartVertex().getLocation().getY() + mPathStride));
+		Rect startRect = new Rect((maze.getStartVertex().getLocation().getX() - mPathStride), 
+		 		                  (maze.getStartVertex().getLocation().getY() - mPathStride), 
+                                  (maze.getStartVertex().getLocation().getX() + mPathStride), 
+                                  (maze.getStartVertex().getLocation().getY() + mPathStride));
 
 		brush.setColor(mMazeEnd);
 		backgroundCanvas.drawRect(endRect, brush);
@@ -826,49 +967,176 @@ class AndroidMazeView extends SurfaceView implements SurfaceHolder.Callback {
 		brush.setColor(Color.WHITE);
 		backgroundCanvas.drawRect(endRect, brush);
 		backgroundCanvas.drawRect(startRect, brush);
+		return image;
 	}
 
 	
 	
 	private boolean restoreMaze() {
-		DisplayMetrics dm = new DisplayMetrics();
-        Display display = ((WindowManager)this.getContext().getSystemService(Context.WINDOW_SERVICE)).getDefaultDisplay();
-        display.getMetrics(dm);
-        MazeBuilder builder = new MazeBuilder(dm.widthPixels, dm.heightPixels, mPathStride);
-        FileInputStream stream = null;
+		DisplayMetrics dm = getDisplayMetrics();
+        // A save may still be in flight from before the activity was paused
+        MazeSaver.getInstance().waitForPending();
+        // A mapped save is used in place, only the pages touched are read
+        Maze mapped = MappedMazeFile.load(getContext().getFileStreamPath(mazeMapFile).getPath(), 
+        		                          dm.widthPixels, dm.heightPixels, mPathStride);
+        if (mapped != null) {
+        	setMaze(mapped, false);
+        	MazeSaver.getInstance().setWritten(mapped);
+        	return true;
+        }
+        InputStream stream = null;
 		try {
-			stream = AndroidMazeView.this.getContext().openFileInput(mazeDumpFile);
+			stream = new BufferedInputStream(AndroidMazeView.this.getContext().openFileInput(mazeDumpFile));
 		} catch (FileNotFoundException e) {
 			return false;
 		}
-        mMaze = builder.build(stream);
-		return true;
+		try {
+			// Saves are binary unless the maze could only be written as XML
+			if (BinaryMazeBuilder.isBinary(stream)) {
+				setMaze(new BinaryMazeBuilder(dm.widthPixels, dm.heightPixels, mPathStride).build(stream), false);
+			}
+			else {
+				setMaze(new MazeBuilder(dm.widthPixels, dm.heightPixels, mPathStride).build(stream), false);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		} finally {
+			try {
+				stream.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		return (mMaze != null);
 	}
 	
 	private boolean buildMazeAuto() {
 		if (mLevel >= mLevelMax) 
 			return false;
-		
-		InputStream s = getResources().openRawResource(R.raw.levels);
-		DisplayMetrics dm = new DisplayMetrics();
-        Display display = ((WindowManager)this.getContext().getSystemService(Context.WINDOW_SERVICE)).getDefaultDisplay();
-        display.getMetrics(dm);
-        AutoMazeBuilder builder = new AutoMazeBuilder(dm.widthPixels, dm.heightPixels, mPathStride);
-        mMaze = builder.build(s, mLevel);
-    
-        try {
-			s.close();
-		} catch (IOException e) {
+		return buildMazeAuto(mLevel, null);
+	}
+	
+	/*
+	 * Build the given level. A null seed picks a random one; otherwise the
+	 * very same maze which was built with that seed is recreated.
+	 */
+	private boolean buildMazeAuto(int level, Long seed) {
+		setMaze(buildMaze(level, seed), false);
+		return (mMaze != null);
+	}
+	
+	/*
+	 * Open the maze placed in the files as mazeRegionFile, for example by
+	 * RegionMazeFile.convert(), which is played as the first level. Only 
+	 * the regions around the bead are ever read. Returns false if there is
+	 * none.
+	 */
+	private boolean openRegionMaze() {
+		File file = getContext().getFileStreamPath(mazeRegionFile);
+		if (!file.exists()) {
 			return false;
 		}
-		
-		if (mMaze == null)
+		Maze maze = RegionMazeFile.open(file.getPath(), mRegionBudget);
+		if (maze == null) {
 			return false;
+		}
+		setMaze(maze, true);
+		return true;
+	}
+	
+	/*
+	 * Replace mMaze, closing the file of a region maze it replaces
+	 */
+	private void setMaze(Maze maze, boolean region) {
+		if (mRegionMaze && (mMaze != null) && (mMaze != maze)) {
+			mMaze.close();
+		}
+		mMaze = maze;
+		mRegionMaze = region;
+	}
+	
+	/*
+	 * Only touches its arguments and immutable state so it is safe to call
+	 * from the prefetch thread. Returns null on failure.
+	 */
+	private Maze buildMaze(int level, Long seed) {
+		LevelConfig config = getLevelConfig();
+		if (config == null) {
+			return null;
+		}
+		DisplayMetrics dm = getDisplayMetrics();
+        AutoMazeBuilder builder = new AutoMazeBuilder(dm.widthPixels, dm.heightPixels, mPathStride);
+        if (seed != null) {
+        	builder.setSeed(seed);
+        }
+        Maze maze = builder.build(config, level);
+		
 	    /*
 	     * For debugging
-		XMLView xv = new XMLView("/sdcard/out." + mLevel + ".xml", mMaze);
+		XMLView xv = new XMLView("/sdcard/out." + level + ".xml", maze);
 		xv.print();
 		*/
-		return true;
+		return maze;
+	}
+	
+	/*
+	 * Size of the display the mazes are built for
+	 */
+	private DisplayMetrics getDisplayMetrics() {
+		DisplayMetrics dm = new DisplayMetrics();
+		Display display = ((WindowManager)this.getContext().getSystemService(Context.WINDOW_SERVICE)).getDefaultDisplay();
+		display.getMetrics(dm);
+		return dm;
+	}
+	
+	/*
+	 * Journal the bead being put on mMaze, with what it takes to rebuild 
+	 * the maze for a replay
+	 */
+	private void recordStart() {
+		LevelConfig config = getLevelConfig();
+		mJournal.recordStart(mLevel, (config == null) ? null : config.getGeneratorName(mLevel), mMaze);
+	}
+	
+	/*
+	 * The level schedule is parsed on first use and shared by the game and
+	 * the prefetch thread
+	 */
+	private synchronized LevelConfig getLevelConfig() {
+		if (mLevelConfig != null) {
+			return mLevelConfig;
+		}
+		InputStream s = getResources().openRawResource(R.raw.levels);
+		mLevelConfig = LevelConfig.parse(s);
+		try {
+			s.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return mLevelConfig;
+	}
+	
+	/*
+	 * Start building level + 1 in the background while level is played
+	 */
+	private void prefetchNextLevel() {
+		final int level = mLevel + 1;
+		if (level >= mLevelMax) {
+			mPrefetcher.cancel();
+			return;
+		}
+		final int colorIndex = getNextColorIndex(mBackGroundColorIndex, mColors.length);
+		mPrefetcher.prefetch(level, new LevelPrefetcher.LevelFactory() {
+			public LevelPrefetcher.Level create() {
+				Maze maze = buildMaze(level, null);
+				// Skip rendering when the level was cancelled while generating
+				if ((maze == null) || Thread.currentThread().isInterrupted()) {
+					return null;
+				}
+				Bitmap image = createStaticMazeImage(maze, level, colorIndex);
+				return new LevelPrefetcher.Level(level, maze, image, colorIndex);
+			}
+		});
 	}
 }
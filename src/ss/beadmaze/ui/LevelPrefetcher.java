@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2010, 2012, Sonal Santan < sonal DOT santan AT gmail DOT com >
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+
+
+package ss.beadmaze.ui;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import android.graphics.Bitmap;
+
+import ss.beadmaze.Maze;
+
+/*
+ * Builds the next level on a low priority background thread while the 
+ * current one is being played, so that moving to the next level does not
+ * stall the game thread on maze generation and background rendering. At
+ * most one level is kept ahead which bounds the extra memory to one maze
+ * and one background bitmap.
+ */
+class LevelPrefetcher {
+	/*
+	 * A fully prepared level, ready to be swapped in
+	 */
+	static class Level {
+		private final int mLevel;
+		private final Maze mMaze;
+		private final Bitmap mBackground;
+		private final int mColorIndex;
+		
+		Level(int level, Maze maze, Bitmap background, int colorIndex) {
+			mLevel = level;
+			mMaze = maze;
+			mBackground = background;
+			mColorIndex = colorIndex;
+		}
+		
+		int getLevel() {
+			return mLevel;
+		}
+		
+		Maze getMaze() {
+			return mMaze;
+		}
+		
+		Bitmap getBackground() {
+			return mBackground;
+		}
+		
+		int getColorIndex() {
+			return mColorIndex;
+		}
+	}
+	
+	/*
+	 * Runs on the prefetch thread; must only touch state which is safe to
+	 * read concurrently with the game thread. Returns null on failure. A
+	 * cancelled build is interrupted and should give up at the next step 
+	 * by checking Thread.currentThread().isInterrupted().
+	 */
+	interface LevelFactory {
+		Level create();
+	}
+	
+	private final ExecutorService mExecutor;
+	private Future<Level> mPending = null;
+	private int mPendingLevel = -1;
+	// The prefetch thread, see take()
+	private volatile Thread mWorker = null;
+	
+	LevelPrefetcher() {
+		mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "LevelPrefetcher");
+				t.setDaemon(true);
+				t.setPriority(Thread.MIN_PRIORITY);
+				mWorker = t;
+				return t;
+			}
+		});
+	}
+	
+	/*
+	 * Start preparing level unless it is already being prepared. Any other
+	 * pending level is dropped.
+	 */
+	synchronized void prefetch(int level, final LevelFactory factory) {
+		if (mExecutor.isShutdown() || ((mPending != null) && (mPendingLevel == level))) {
+			return;
+		}
+		cancel();
+		mPendingLevel = level;
+		mPending = mExecutor.submit(new Callable<Level>() {
+			public Level call() {
+				return factory.create();
+			}
+		});
+	}
+	
+	/*
+	 * Hand over the prepared level, waiting for it if it is still being 
+	 * built. Returns null if level was not prefetched or preparing it 
+	 * failed; the caller should then build it inline. 
+	 *
+	 * While the caller waits the prefetch thread runs at the caller's
+	 * priority, so that it is not starved by the threads the caller is 
+	 * holding up. The wait is outside the lock of this prefetcher, so 
+	 * cancel() and shutdown() do not block on it.
+	 */
+	Level take(int level) {
+		Future<Level> pending;
+		synchronized (this) {
+			if ((mPending == null) || (mPendingLevel != level)) {
+				cancel();
+				return null;
+			}
+			pending = mPending;
+			mPending = null;
+			mPendingLevel = -1;
+		}
+		Thread worker = mWorker;
+		boolean boosted = !pending.isDone() && (worker != null);
+		if (boosted) {
+			worker.setPriority(Thread.currentThread().getPriority());
+		}
+		try {
+			return pending.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (ExecutionException e) {
+			e.printStackTrace();
+			return null;
+		} finally {
+			if (boosted) {
+				worker.setPriority(Thread.MIN_PRIORITY);
+			}
+		}
+	}
+	
+	synchronized void cancel() {
+		if (mPending != null) {
+			mPending.cancel(true);
+		}
+		mPending = null;
+		mPendingLevel = -1;
+	}
+	
+	/*
+	 * Cancel any pending level and stop the prefetch thread. Later calls of
+	 * prefetch() are ignored.
+	 */
+	synchronized void shutdown() {
+		cancel();
+		mExecutor.shutdownNow();
+	}
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2010, 2012, Sonal Santan < sonal DOT santan AT gmail DOT com >
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+
+
+package ss.beadmaze.ui;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import ss.beadmaze.MappedMazeFile;
+import ss.beadmaze.Maze;
+
+/*
+ * Writes maze snapshots on a background thread so that saving does not 
+ * hold up the UI thread or the game loop. Saves are coalesced: only the
+ * latest snapshot still waiting is written. Every file is written to a
+ * temporary file and renamed into place, so a reader never sees a half
+ * written save. 
+ *
+ * There is a single saver per process, which lets a restore wait for a 
+ * save started by an earlier instance of the view.
+ */
+class MazeSaver {
+	private static final MazeSaver mInstance = new MazeSaver();
+	
+	private static class Request {
+		final Maze mSource;
+		final Maze mSnapshot;
+		final String mMapFile;
+		final String mDumpFile;
+		
+		Request(Maze source, Maze snapshot, String mapFile, String dumpFile) {
+			mSource = source;
+			mSnapshot = snapshot;
+			mMapFile = mapFile;
+			mDumpFile = dumpFile;
+		}
+	}
+	
+	private final ExecutorService mExecutor;
+	private Request mPending = null;
+	private boolean mScheduled = false;
+	// Only accessed on the saver thread: the maze whose topology the map 
+	// file holds, so that its later saves only update the bead state
+	private Maze mWritten = null;
+	
+	private final Runnable mDrain = new Runnable() {
+		public void run() {
+			while (true) {
+				Request request;
+				synchronized (MazeSaver.this) {
+					request = mPending;
+					mPending = null;
+					if (request == null) {
+						mScheduled = false;
+						return;
+					}
+				}
+				write(request);
+			}
+		}
+	};
+	
+	private MazeSaver() {
+		mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "MazeSaver");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+	
+	static MazeSaver getInstance() {
+		return mInstance;
+	}
+	
+	/*
+	 * Queue snapshot, a Maze.snapshot() of source, for writing
+	 */
+	synchronized void save(Maze source, Maze snapshot, String mapFile, String dumpFile) {
+		mPending = new Request(source, snapshot, mapFile, dumpFile);
+		if (!mScheduled) {
+			mScheduled = true;
+			mExecutor.execute(mDrain);
+		}
+	}
+	
+	/*
+	 * The saver thread, for other file writes that must not happen on the
+	 * UI thread or the game loop. Tasks run in the order they are queued.
+	 */
+	Executor getExecutor() {
+		return mExecutor;
+	}
+	
+	/*
+	 * Record that maze was loaded from the map file, so that it is not 
+	 * written again in full
+	 */
+	void setWritten(final Maze maze) {
+		mExecutor.execute(new Runnable() {
+			public void run() {
+				mWritten = maze;
+			}
+		});
+	}
+	
+	/*
+	 * Block until every save queued so far is on disk
+	 */
+	void waitForPending() {
+		Future<?> done = mExecutor.submit(new Runnable() {
+			public void run() {
+			}
+		});
+		try {
+			done.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	private void write(Request request) {
+		// The topology is written once per maze, later saves only update 
+		// the bead state in place
+		if ((request.mSource == mWritten) && MappedMazeFile.writeState(request.mSnapshot, request.mMapFile)) {
+			return;
+		}
+		mWritten = null;
+		// Prefer the mapped layout which is resumed without parsing
+		if (MappedMazeFile.write(request.mSnapshot, request.mMapFile)) {
+			mWritten = request.mSource;
+			new File(request.mDumpFile).delete();
+			return;
+		}
+		File temp = new File(request.mDumpFile + ".tmp");
+		FileOutputStream stream;
+		try {
+			stream = new FileOutputStream(temp);
+		} catch (FileNotFoundException e) {
+			e.printStackTrace();
+			return;
+		}
+		if (request.mSnapshot.saveMaze(stream) && temp.renameTo(new File(request.mDumpFile))) {
+			new File(request.mMapFile).delete();
+		}
+		else {
+			temp.delete();
+		}
+	}
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2010, 2012, Sonal Santan < sonal DOT santan AT gmail DOT com >
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+
+
+package ss.beadmaze;
+
+import java.util.Random;
+import java.util.Stack;
+
+import ss.beadmaze.Maze.Direction;
+
+/*
+ * Compares BacktrackerGenerator with the Stack<Integer> based step it
+ * replaced, kept below as StackBacktracker. Runs on a desktop JVM, see
+ * tests/README.md; a 4096x4096 grid needs about -Xmx3g.
+ *
+ *   BacktrackerBenchmark [size [runs]]
+ *
+ * Both must carve the same maze from the same seed, which is checked 
+ * before timing.
+ */
+public class BacktrackerBenchmark {
+	/*
+	 * The generator as it was before: a synchronized stack of boxed ids, a
+	 * boolean per cell and a new neighbor array per step
+	 */
+	static class StackBacktracker implements MazeGenerator {
+		private static final Direction mDirections[] = {Direction.EAST, Direction.WEST, Direction.NORTH, Direction.SOUTH};
+		private GridMaze mGrid = null;
+		private Random mRandGen = null;
+		private boolean mVisited[] = null;
+		
+		public void generate(GridMaze grid, Random rand) {
+			mGrid = grid;
+			mRandGen = rand;
+			mVisited = new boolean[grid.getVertexCount()];
+			Stack<Integer> stack = new Stack<Integer>();
+			stack.push(0);
+			while (!stack.isEmpty()) {
+				mVisited[stack.peek()] = true;
+				int dir = selectNeighbor(stack.peek());
+				if (dir >= 0) {
+					mGrid.addLink(stack.peek(), mDirections[dir]);
+					stack.push(mGrid.getAdjacent(stack.peek(), mDirections[dir]));
+				}
+				else {
+					stack.pop();	
+				}
+			}
+			mVisited = null;
+			mGrid = null;
+		}
+		
+		private int selectNeighbor(int id) {
+			int neighbor[] = new int[mDirections.length];
+			int validNeighborCount = 0;
+			for (int i = 0; i < mDirections.length; i++) {
+				int adjacent = mGrid.getAdjacent(id, mDirections[i]);
+				if ((adjacent < 0) || mVisited[adjacent])
+					continue;
+				neighbor[validNeighborCount++] = i;
+			}
+			if (validNeighborCount == 0)
+				return -1;
+			if (validNeighborCount == 1)
+				return neighbor[0];
+			return neighbor[mRandGen.nextInt(validNeighborCount)];
+		}	
+	}
+	
+	public static void main(String args[]) {
+		int size = (args.length > 0) ? Integer.parseInt(args[0]) : 4096;
+		int runs = (args.length > 1) ? Integer.parseInt(args[1]) : 3;
+		
+		GridMaze expected = new GridMaze(256, 256, 5120, 5120, 10);
+		new StackBacktracker().generate(expected, new Random(1));
+		GridMaze actual = new GridMaze(256, 256, 5120, 5120, 10);
+		new BacktrackerGenerator().generate(actual, new Random(1));
+		for (int i = 0; i < expected.getVertexCount(); i++) {
+			if ((expected.getNeighbor(i, Direction.EAST) != actual.getNeighbor(i, Direction.EAST)) ||
+				(expected.getNeighbor(i, Direction.SOUTH) != actual.getNeighbor(i, Direction.SOUTH))) {
+				System.out.println("Mazes differ at cell " + i);
+				System.exit(1);
+			}
+		}
+		
+		System.out.println(size + "x" + size + " grid, best of " + runs);
+		report("before", new StackBacktracker(), size, runs);
+		report("after", new BacktrackerGenerator(), size, runs);
+	}
+	
+	private static void report(String label, MazeGenerator generator, int size, int runs) {
+		long best = Long.MAX_VALUE;
+		for (int run = 0; run <= runs; run++) {
+			GridMaze grid = new GridMaze(size, size, size * 20, size * 20, 10);
+			long start = System.nanoTime();
+			generator.generate(grid, new Random(run));
+			long time = System.nanoTime() - start;
+			// Run 0 only warms up
+			if (run > 0) {
+				best = Math.min(best, time);
+			}
+		}
+		System.out.printf("%-7s %8.1f ms %8.2f Mcells/s%n", label, best / 1e6, (long)size * size * 1e3 / best);
+	}
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2010, 2012, Sonal Santan < sonal DOT santan AT gmail DOT com >
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+
+
+package ss.beadmaze;
+
+import java.util.Random;
+
+/*
+ * Throughput of the maze generators in cells per second. Runs on a desktop
+ * JVM, see tests/README.md.
+ *
+ *   GeneratorBenchmark [size [runs [name ...]]]
+ *
+ * Every generator carves a size x size grid runs times after one warm up
+ * run; the best run is reported. Without names all generators are run.
+ */
+public class GeneratorBenchmark {
+	private static final String mNames[] = {"backtracker", "kruskal", "prim", "wilson", "sidewinder", "binarytree"};
+	
+	public static void main(String args[]) {
+		int size = (args.length > 0) ? Integer.parseInt(args[0]) : 2048;
+		int runs = (args.length > 1) ? Integer.parseInt(args[1]) : 3;
+		String names[] = mNames;
+		if (args.length > 2) {
+			names = new String[args.length - 2];
+			System.arraycopy(args, 2, names, 0, names.length);
+		}
+		long cells = (long)size * size;
+		System.out.println(size + "x" + size + " grid, best of " + runs);
+		for (String name : names) {
+			MazeGenerator generator = AutoMazeBuilder.createGenerator(name);
+			if (generator == null) {
+				System.out.println(name + ": unknown generator");
+				continue;
+			}
+			long best = Long.MAX_VALUE;
+			for (int run = 0; run <= runs; run++) {
+				GridMaze grid = new GridMaze(size, size, size * 20, size * 20, 10);
+				long start = System.nanoTime();
+				generator.generate(grid, new Random(run));
+				long time = System.nanoTime() - start;
+				// Run 0 only warms up
+				if (run > 0) {
+					best = Math.min(best, time);
+				}
+			}
+			System.out.printf("%-12s %8.1f ms %8.2f Mcells/s%n", name, best / 1e6, cells * 1e3 / best);
+		}
+	}
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2010, 2012, Sonal Santan < sonal DOT santan AT gmail DOT com >
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+
+
+package ss.beadmaze;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
+
+import ss.beadmaze.Maze.Orientation;
+
+/*
+ * Records a long game, in which the bead vertex stickiness is toggled 
+ * now and then, into a PlayJournal small enough to rotate several times
+ * and checks that the current file and <file>.old each replay on 
+ * their own to the recorded bead positions, from mazes rebuilt with 
+ * nothing but what the journal holds. This is done first with a writer 
+ * that keeps up and then with one that falls behind and drops buffers.
+ * Runs on a desktop JVM, see tests/README.md. Exits with status 1 on 
+ * failure.
+ */
+public class JournalRotationCheck {
+	private static final int mLevel = 7;
+	private static final long mSeed = 42;
+	private static final int mMoves = 20000;
+	private static final int mWidth = 720;
+	private static final int mHeight = 1280;
+	private static final int mPathStride = 12;
+	private static final LevelConfig mLevels = parse(
+		"<maze><levelstart count=\"100\"/><leveldelta count=\"15\"/><generator name=\"backtracker\"/></maze>");
+	// The same sizes with another generator, which a replay has to notice
+	private static final LevelConfig mOtherLevels = parse(
+		"<maze><levelstart count=\"100\"/><leveldelta count=\"15\"/><generator name=\"kruskal\"/></maze>");
+	
+	private static class QueuedExecutor implements Executor {
+		final List<Runnable> mTasks = new ArrayList<Runnable>();
+		
+		public void execute(Runnable task) {
+			mTasks.add(task);
+		}
+		
+		void runAll() {
+			for (int i = 0; i < mTasks.size(); i++) {
+				mTasks.get(i).run();
+			}
+			mTasks.clear();
+		}
+	}
+	
+	public static void main(String args[]) throws IOException {
+		File dir = File.createTempFile("journal", "");
+		dir.delete();
+		dir.mkdir();
+		File file = new File(dir, "playjournal");
+		boolean ok = true;
+		
+		Executor direct = new Executor() {
+			public void execute(Runnable task) {
+				task.run();
+			}
+		};
+		Maze maze = record(file, direct, 0);
+		ok &= check(file, maze, true);
+		
+		file.delete();
+		new File(file.getPath() + ".old").delete();
+		// The writer only catches up every 200 moves, which the buffer does
+		// not hold
+		QueuedExecutor queued = new QueuedExecutor();
+		maze = record(file, queued, 200);
+		queued.runAll();
+		ok &= check(file, maze, false);
+		
+		file.delete();
+		new File(file.getPath() + ".old").delete();
+		dir.delete();
+		if (!ok) {
+			System.exit(1);
+		}
+	}
+	
+	private static LevelConfig parse(String xml) {
+		return LevelConfig.parse(new ByteArrayInputStream(xml.getBytes()));
+	}
+	
+	private static Maze build(LevelConfig config, int width, int height, int pathStride, int level, long seed) {
+		AutoMazeBuilder builder = new AutoMazeBuilder(width, height, pathStride);
+		builder.setSeed(seed);
+		return builder.build(config, level);
+	}
+	
+	/*
+	 * Play a game into a journal on file and return the maze as it ended.
+	 * If catchUp is positive the writer is queued and run that often.
+	 */
+	private static Maze record(File file, Executor writer, int catchUp) {
+		PlayJournal journal = new PlayJournal(file.getPath(), 256, 2048, writer, mWidth, mHeight, mPathStride);
+		Maze maze = build(mLevels, mWidth, mHeight, mPathStride, mLevel, mSeed);
+		journal.recordStart(mLevel, mLevels.getGeneratorName(mLevel), maze);
+		Random rand = new Random(1);
+		int distance = 3;
+		Orientation orient = Orientation.X_AXIS;
+		for (int i = 0; i < mMoves; i++) {
+			// Turn often and by uneven steps so that the stickiness matters
+			if ((i & 3) == 0) {
+				distance = (rand.nextInt(7) + 1) * (rand.nextBoolean() ? 1 : -1);
+				orient = rand.nextBoolean() ? Orientation.X_AXIS : Orientation.Y_AXIS;
+			}
+			if (i % 50 == 25) {
+				maze.toggleBeadVirtexStickiness();
+			}
+			int result = maze.moveBead(distance, orient);
+			journal.recordMove(distance, orient, result, maze);
+			if ((catchUp > 0) && (i % catchUp == 0)) {
+				((QueuedExecutor)writer).runAll();
+			}
+		}
+		journal.close();
+		return maze;
+	}
+	
+	private static boolean check(File file, Maze recorded, boolean complete) throws IOException {
+		File old = new File(file.getPath() + ".old");
+		if (!old.exists()) {
+			System.out.println("FAIL: " + file + " never rotated");
+			return false;
+		}
+		long oldEnd = replay(old, null);
+		if (oldEnd < 0) {
+			return false;
+		}
+		Bead bead = recorded.getBead();
+		long end = replay(file, bead);
+		if (end < 0) {
+			return false;
+		}
+		if (end < oldEnd) {
+			System.out.println("FAIL: time went back from " + oldEnd + " to " + end + " across the rotation");
+			return false;
+		}
+		System.out.println("OK: " + (complete ? "complete" : "lossy") + " journal replays across rotation");
+		return true;
+	}
+	
+	/*
+	 * Replay file on its own and return the time of its last record, or 
+	 * -1 if it does not replay. If end is given the bead has to end up 
+	 * where it is.
+	 */
+	private static long replay(File file, Bead end) throws IOException {
+		JournalReplayer replayer = new JournalReplayer(new FileInputStream(file));
+		Maze maze = null;
+		int moves = 0;
+		try {
+			while (replayer.next()) {
+				if ((maze == null) && replayer.isStarted()) {
+					maze = build(mLevels, replayer.getDisplayWidth(), replayer.getDisplayHeight(), 
+							     replayer.getPathStride(), replayer.getLevel(), replayer.getSeed());
+					if (!replayer.matches(mLevels, maze)) {
+						System.out.println("FAIL: " + file + " does not match the maze rebuilt from it");
+						return -1;
+					}
+					Maze other = build(mOtherLevels, replayer.getDisplayWidth(), replayer.getDisplayHeight(), 
+							           replayer.getPathStride(), replayer.getLevel(), replayer.getSeed());
+					if (replayer.matches(mOtherLevels, other)) {
+						System.out.println("FAIL: " + file + " matches a maze of another level schedule");
+						return -1;
+					}
+				}
+				if (replayer.getType() == JournalReplayer.RecordType.MOVE) {
+					if (maze == null) {
+						System.out.println("FAIL: " + file + " has moves before any state");
+						return -1;
+					}
+					moves++;
+				}
+				if ((maze != null) && !replayer.apply(maze)) {
+					System.out.println("FAIL: " + file + " diverged after " + moves + " moves");
+					return -1;
+				}
+			}
+			if ((end != null) && ((maze == null) || 
+				(maze.getBead().getVertexId1() != end.getVertexId1()) || (maze.getBead().getVertexId2() != end.getVertexId2()) ||
+				(maze.getBeadX() != end.getX()) || (maze.getBeadY() != end.getY()))) {
+				System.out.println("FAIL: " + file + " does not end where the game did");
+				return -1;
+			}
+			System.out.println(file.getName() + ": " + moves + " moves");
+			return replayer.getTime();
+		} finally {
+			replayer.close();
+		}
+	}
+}
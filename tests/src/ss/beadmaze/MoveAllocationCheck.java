@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2010, 2012, Sonal Santan < sonal DOT santan AT gmail DOT com >
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+
+
+package ss.beadmaze;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import ss.beadmaze.Maze.Orientation;
+
+/*
+ * Checks that moving the bead and reading its position back allocate
+ * nothing. Runs on a desktop JVM, see tests/README.md. Run it with -Xint
+ * so that escape analysis cannot hide allocations; Dalvik has none either.
+ * Exits with status 1 if any bytes were allocated.
+ */
+public class MoveAllocationCheck {
+	private static final int mMoves = 1000000;
+	
+	public static void main(String args[]) {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+		
+		GridMaze grid = new GridMaze(64, 64, 1280, 1280, 10);
+		new BacktrackerGenerator().generate(grid, new Random(1));
+		Bead bead = new Bead(grid, grid.getVertex(0), 10);
+		Maze maze = new Maze(bead, grid, grid.getVertex(grid.getVertexCount() - 1), 1280, 1280, 5);
+		
+		// Inputs are drawn up front so that the loop only exercises the maze
+		Random rand = new Random(2);
+		int distance[] = new int[1024];
+		Orientation orient[] = new Orientation[distance.length];
+		for (int i = 0; i < distance.length; i++) {
+			distance[i] = rand.nextBoolean() ? 3 : -3;
+			orient[i] = rand.nextBoolean() ? Orientation.X_AXIS : Orientation.Y_AXIS;
+		}
+		Location loc = new Location(0, 0);
+		
+		// The first pass loads and initializes the classes involved, which 
+		// allocates once; only the second pass is counted
+		run(maze, distance, orient, loc);
+		maze.resetBead();
+		long before = threads.getThreadAllocatedBytes(thread);
+		long overhead = threads.getThreadAllocatedBytes(thread) - before;
+		before = threads.getThreadAllocatedBytes(thread);
+		long sum = run(maze, distance, orient, loc);
+		long allocated = threads.getThreadAllocatedBytes(thread) - before - overhead;
+		
+		System.out.println(mMoves + " moves, checksum " + sum);
+		System.out.println(allocated + " bytes allocated");
+		if (allocated > 0) {
+			System.exit(1);
+		}
+	}
+	
+	private static long run(Maze maze, int distance[], Orientation orient[], Location loc) {
+		long sum = 0;
+		for (int i = 0; i < mMoves; i++) {
+			// Keep going in one direction for a while like a held key
+			int step = (i >> 5) & (distance.length - 1);
+			sum += maze.moveBead(distance[step], orient[step]);
+			maze.getBeadLocation(loc);
+			sum += maze.getBeadX() + maze.getBeadY() + loc.getX();
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2010, 2012, Sonal Santan < sonal DOT santan AT gmail DOT com >
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+
+
+package ss.beadmaze;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/*
+ * Checks that the maze work AndroidMazeThread.saveState() does while it
+ * holds the game lock, taking a Maze.snapshot(), stays within a bound of
+ * microseconds however large the maze is. The rest of the time under the
+ * lock goes to a handful of Bundle puts. Runs on a desktop JVM, see 
+ * tests/README.md. Exits with status 1 if the bound is exceeded.
+ */
+public class SaveLockCheck {
+	private static final int mRuns = 10000;
+	private static final long mBoundNanos = 50 * 1000;
+	
+	public static void main(String args[]) {
+		int size = (args.length > 0) ? Integer.parseInt(args[0]) : 1000;
+		GridMaze grid = new GridMaze(size, size, size * 10, size * 10, 10);
+		new BacktrackerGenerator().generate(grid, new Random(1));
+		Bead bead = new Bead(grid, grid.getVertex(0), 10);
+		Maze maze = new Maze(bead, grid, grid.getVertex(grid.getVertexCount() - 1), size * 10, size * 10, 5);
+		Object lock = new Object();
+		
+		long times[] = new long[mRuns];
+		long sum = 0;
+		// Warm up first, as the game has by the time it is paused
+		for (int pass = 0; pass < 2; pass++) {
+			for (int i = 0; i < mRuns; i++) {
+				maze.moveBead(3, Maze.Orientation.X_AXIS);
+				long begin = System.nanoTime();
+				synchronized (lock) {
+					sum += maze.snapshot().getBeadX();
+				}
+				times[i] = System.nanoTime() - begin;
+			}
+		}
+		Arrays.sort(times);
+		long median = times[mRuns / 2];
+		long high = times[mRuns * 99 / 100];
+		System.out.println(size + "x" + size + ", checksum " + sum);
+		System.out.println("snapshot under lock: median " + median / 1000.0 + "us, 99th percentile " + 
+				           high / 1000.0 + "us, max " + times[mRuns - 1] / 1000.0 + "us");
+		if (high > mBoundNanos) {
+			System.out.println("FAIL: 99th percentile above " + mBoundNanos / 1000 + "us");
+			System.exit(1);
+		}
+	}
+}